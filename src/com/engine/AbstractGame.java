@@ -7,13 +7,21 @@ import com.engine.entity.*;
 import com.engine.event.DefaultKeyListener;
 import com.engine.event.KeyHandler;
 import com.engine.map.AbstractMap;
+import com.engine.sprite.SpriteAnimator;
 import com.engine.view.AbstractGameScreen;
+import com.engine.view.Camera;
 import com.engine.view.DisplayableDrawer;
+import com.engine.view.PerformanceHud;
+import com.engine.view.QualityGovernor;
 
-import java.util.Collection;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -36,11 +44,12 @@ public abstract class AbstractGame implements Runnable, Context {
     private volatile boolean mRunning;
 
     /**
-     * A {@link UniqueInsertMap} that holds {@code entities} in game.
+     * An {@link EntityRegistry} that holds {@code entities} in game.
      * @see #getEntity(String, Class)
      * @see #addEntity(String, Entity)
+     * @see #addEntity(Entity)
      */
-    private final UniqueInsertMap<String, Entity> mEntities = new UniqueInsertMap<>();
+    private final EntityRegistry mEntities = new EntityRegistry();
 
     /**
      * Map that holds {@code entity managers} in game.
@@ -51,6 +60,58 @@ public abstract class AbstractGame implements Runnable, Context {
      */
     private final UniqueInsertMap<String, EntityCollection<? extends Entity>> mEntityManagers=new UniqueInsertMap<>();
 
+    /**
+     * Entity managers in the order they were added.
+     * Iterated by {@link #forEachEntityManager(Consumer)}.
+     */
+    private final List<EntityCollection<? extends Entity>> mEntityManagerList=new ArrayList<>();
+
+    /**
+     * Spawns, despawns and entity manager registrations made while a tick is running
+     * or from another thread while the game loop runs.
+     * Applied at the end of each tick, see {@link #updateEverything()}.
+     * Also used as lock for changes of {@link #mEntities} and {@link #mEntityManagers}.
+     */
+    private final EntityCommandBuffer mCommands=new EntityCommandBuffer();
+
+    /**
+     * Applies commands of {@link #mCommands}.
+     */
+    private final EntityCommandBuffer.Target mCommandTarget=new EntityCommandBuffer.Target() {
+        @Override
+        public void spawn(int handle, String name, Entity entity) {
+            mEntities.commit(handle, name, entity);
+        }
+
+        @Override
+        public void despawn(int handle) {
+            mEntities.remove(handle);
+        }
+
+        @Override
+        public void addManager(String id, EntityCollection<? extends Entity> manager) {
+            mEntityManagers.putPair(id, manager);
+            mEntityManagerList.add(manager);
+        }
+
+        @Override
+        public void removeManager(String id) {
+            EntityCollection<?> manager=mEntityManagers.remove(id);
+            if(manager!=null) mEntityManagerList.remove(manager);
+        }
+    };
+
+    /**
+     * Thread running the game loop, {@code null} while loop is not running.
+     * @see #run()
+     */
+    private volatile Thread mLoopThread;
+
+    /**
+     * Is {@code true} while {@link #updateEverything()} updates entities.
+     */
+    private boolean mInTick;
+
     /**
      * Default game screen.
      * @see AbstractGameScreen
@@ -88,6 +149,39 @@ public abstract class AbstractGame implements Runnable, Context {
      */
     private Thread mGameThread;
 
+    /**
+     * Overlay the game loop reports tick timings to, null for none.
+     * @see #setPerformanceHud(PerformanceHud)
+     */
+    private volatile PerformanceHud mPerformanceHud;
+
+    /**
+     * Camera of the game screen, updated once per tick.
+     * @see #getCamera()
+     */
+    private final Camera mCamera=new Camera();
+
+    /**
+     * Is {@code true} while frames are only rendered when something changed.
+     * @see #setOnDemandRendering(boolean, long)
+     */
+    private volatile boolean mOnDemandRendering;
+
+    /**
+     * Longest time between two frames in on-demand mode.
+     */
+    private volatile long mHeartbeat_millis;
+
+    /**
+     * Time the last frame was rendered.
+     */
+    private long mLastRender_millis;
+
+    /**
+     * Is {@code true} if a key was pressed or released since the last frame.
+     */
+    private final AtomicBoolean mInputArrived=new AtomicBoolean();
+
     /**
      * Main no-args constructor.
      * Initializes a player and common instances.
@@ -101,6 +195,17 @@ public abstract class AbstractGame implements Runnable, Context {
         mMap = createMapHandler();
 
         mDisplay.addKeyListener(mKeyListener);
+        mDisplay.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                mInputArrived.set(true);
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                mInputArrived.set(true);
+            }
+        });
         mDisplay.gainFocus();
     }
 
@@ -137,17 +242,97 @@ public abstract class AbstractGame implements Runnable, Context {
      * @return returns this, allowing chain calls.
      */
     public Context addEntity(String name, Entity entity) {
-        mEntities.putPair(name, entity);
+        spawn(name, entity);
         return this;
     }
 
+    /**
+     * Adds an entity without name to the game.
+     * While a tick is running, entity is added at the end of the tick, but the handle can be kept already.
+     * @param entity entity implementation to add.
+     * @return handle of the entity, use it to find or remove entity later.
+     * @see #getEntity(int)
+     * @see #removeEntity(int)
+     */
+    public int addEntity(Entity entity) {
+        return spawn(null, entity);
+    }
+
+    /**
+     * Adds an entity now, or records it to {@link #mCommands} if entities may be iterated right now.
+     * @param name name of entity, {@code null} for no name.
+     * @param entity entity to add.
+     * @return handle of the entity.
+     * @throws IllegalArgumentException if name is already in use.
+     */
+    private int spawn(String name, Entity entity) throws IllegalArgumentException {
+        synchronized (mCommands) {
+            if(!isDeferring())
+                return mEntities.add(name, entity);
+            if(name!=null&&(mEntities.getHandle(name)!=EntityRegistry.INVALID_HANDLE||mCommands.isNamePending(name)))
+                throw new IllegalArgumentException("key "+name+" already added.");
+            int handle=mEntities.reserve();
+            mCommands.spawn(handle, name, entity);
+            return handle;
+        }
+    }
+
+    /**
+     * Removes entity with given handle from game.
+     * While a tick is running, entity is removed at the end of the tick.
+     * @param handle handle of entity to remove.
+     * @return {@code true} if handle pointed to an entity or to an entity waiting to be added, {@code false} if handle is stale.
+     */
+    public boolean removeEntity(int handle) {
+        synchronized (mCommands) {
+            if(!isDeferring())
+                return mEntities.remove(handle);
+            if(!mEntities.contains(handle)&&!mEntities.isReserved(handle))
+                return false;
+            mCommands.despawn(handle);
+            return true;
+        }
+    }
+
     /**
      * Starts updating given entity manager.
+     * While a tick is running, manager is added at the end of the tick.
      * @param id manager id.
      * @param entityManager entity manger to start updating.
+     * @throws IllegalArgumentException if id is already in use.
+     */
+    public void addEntityManager(String id, EntityCollection<? extends Entity> entityManager) throws IllegalArgumentException {
+        synchronized (mCommands) {
+            if(!isDeferring()) {
+                mCommandTarget.addManager(id, entityManager);
+            } else {
+                if(mEntityManagers.containsKey(id)||mCommands.isManagerPending(id))
+                    throw new IllegalArgumentException("key "+id+" already added.");
+                mCommands.addManager(id, entityManager);
+            }
+        }
+    }
+
+    /**
+     * Stops updating entity manager with given id.
+     * While a tick is running, manager is removed at the end of the tick.
+     * @param id manager id.
      */
-    public void addEntityManager(String id, EntityCollection<? extends Entity> entityManager) {
-        mEntityManagers.putPair(id, entityManager);
+    public void removeEntityManager(String id) {
+        synchronized (mCommands) {
+            if(!isDeferring()) mCommandTarget.removeManager(id);
+            else mCommands.removeManager(id);
+        }
+    }
+
+    /**
+     * Says if changes of entities and entity managers must be recorded instead of applied,
+     * which is while a tick is running or when called outside the running game loop thread.
+     * @return {@code true} if changes must be recorded to {@link #mCommands}, {@code false} otherwise.
+     */
+    private boolean isDeferring() {
+        Thread loopThread=mLoopThread;
+        return loopThread!=null&&(mInTick||Thread.currentThread()!=loopThread);
     }
 
     /**
@@ -184,16 +369,30 @@ public abstract class AbstractGame implements Runnable, Context {
     }
 
     /**
-     * Updates all entities in game and removed dead ones.
+     * Advances sprite animations to the current game time,
+     * then updates all entities in game and removed dead ones.
+     * Ends with the sync point of the tick: spawns, despawns and entity manager
+     * registrations recorded while updating are applied in the order they were made.
      */
     private void updateEverything() {
-        forEachEntity(Updatable::update);
-        forEachEntityManager(EntityCollection::update);
-        getMap(com.engine.map.Map.class).update();
-        mPlayer.update();
-
-        // removed dead entities
-        mEntities.values().removeIf(entity -> !entity.isGarbage());
+        SpriteAnimator.getShared().advance(gameTimeMillis());
+        mInTick=true;
+        try {
+            forEachEntity(Updatable::update);
+            forEachEntityManager(EntityCollection::update);
+            getMap(com.engine.map.Map.class).update();
+            mPlayer.update();
+
+            // removed dead entities
+            synchronized (mCommands) {
+                mEntities.removeIf(entity -> !entity.isGarbage());
+            }
+        } finally {
+            mInTick=false;
+        }
+        mCommands.playback(mCommandTarget);
+        if(mCamera.update(mDisplay.dimension()))
+            mDisplay.invalidate(null);
     }
 
     /**
@@ -208,6 +407,16 @@ public abstract class AbstractGame implements Runnable, Context {
         mGameThread.start();
     }
 
+    /**
+     * Returns the camera of the game screen.
+     * It follows its target after entities are updated in each tick.
+     * @return camera.
+     */
+    @Override
+    public Camera getCamera() {
+        return mCamera;
+    }
+
     @Override
     public <T extends com.engine.map.Map> T getMap(Class<T> clazz) throws ClassCastException {
         return clazz.cast(mMap);
@@ -244,13 +453,26 @@ public void run() {
         long delay;
         final long FRAME_RATE = 1000 / mFPS;
         smFromStartTime += System.currentTimeMillis() - smPauseTime;
+        synchronized (mCommands) {
+            mLoopThread=Thread.currentThread();
+        }
         System.out.println("[DEBUG] Game loop started.");
 
         while (mRunning) {
             previousTime = System.currentTimeMillis();
 
+            PerformanceHud hud=mPerformanceHud;
+            long updateStart=System.nanoTime();
             updateEverything();
-            mDisplay.renderEverything();
+            long renderStart=System.nanoTime();
+            boolean render=shouldRender(previousTime);
+            if(render)
+                mDisplay.renderEverything();
+            long renderEnd=System.nanoTime();
+            if(render)
+                QualityGovernor.getShared().tick(renderEnd-updateStart);
+            if(hud!=null)
+                hud.tick(renderStart-updateStart, renderEnd-renderStart, mEntities.size(), mDisplay.getDrawers().size());
 
             smGameTime = System.currentTimeMillis() - smFromStartTime;
 
@@ -266,10 +488,70 @@ public void run() {
             }
         }
 
+        synchronized (mCommands) {
+            mLoopThread=null;
+            mCommands.playback(mCommandTarget); // changes made after the last tick
+        }
         System.out.println("[DEBUG] Game loop stopped.");
         smPauseTime = System.currentTimeMillis();
     }
 
+    /**
+     * Returns if the game loop renders a frame this tick.
+     * In on-demand mode a frame is rendered only if the screen reports changes, a key event arrived
+     * or the heartbeat is due, otherwise always.
+     * @param nowMillis current time.
+     * @return {@code true} to render, {@code false} to skip the frame.
+     * @see DisplayableDrawer#takeChanges()
+     */
+    private boolean shouldRender(long nowMillis) {
+        if(!mOnDemandRendering)
+            return true;
+        boolean changed=mInputArrived.getAndSet(false);
+        changed|=mDisplay.takeChanges(); // always taken, so changes do not pile up
+        if(!changed&&nowMillis-mLastRender_millis<mHeartbeat_millis)
+            return false;
+        mLastRender_millis=nowMillis;
+        return true;
+    }
+
+    /**
+     * Enables or disables on-demand rendering.
+     * In on-demand mode the game still updates every tick, but renders only when an entity moved, animated
+     * or changed sprite, drawers were added or removed, an area was invalidated or a key event arrived.
+     * A frame is rendered at least once per heartbeat anyway, to keep the screen fresh.
+     * Useful for idle menus and paused scenes, which otherwise render the same frame over and over.
+     * @param enabled {@code true} to render only changed frames, {@code false} to render every tick.
+     * @param heartbeatMillis longest time between two frames as milliseconds.
+     * @throws IllegalArgumentException if heartbeat is not positive.
+     */
+    public void setOnDemandRendering(boolean enabled, long heartbeatMillis) throws IllegalArgumentException {
+        if(heartbeatMillis<=0)
+            throw new IllegalArgumentException("Heartbeat must be positive: "+heartbeatMillis);
+        mHeartbeat_millis=heartbeatMillis;
+        mOnDemandRendering=enabled;
+        mDisplay.invalidate(null);
+    }
+
+    /**
+     * Returns if frames are only rendered when something changed.
+     * @return {@code true} in on-demand mode, {@code false} otherwise.
+     */
+    public boolean isOnDemandRendering() {
+        return mOnDemandRendering;
+    }
+
+    /**
+     * Sets the overlay the game loop reports tick timings to.
+     * The overlay is not drawn by the game, draw it from the top layer of the screen.
+     * @param hud overlay to report to, null to stop reporting.
+     * @see PerformanceHud
+     */
+    public void setPerformanceHud(PerformanceHud hud) {
+        if(hud!=null) hud.setTargetFPS(mFPS);
+        mPerformanceHud=hud;
+    }
+
     /**
      * Returns game time.
      * @return time since begin of the game. except
@@ -308,6 +590,16 @@ public void run() {
         return Optional.ofNullable(mEntities.get(name));
     }
 
+    /**
+     * Returns Entity with given handle wrapped in an {@link Optional}.
+     * @param handle entity's handle.
+     * @return optional containing entity or null if handle is stale.
+     * @see #addEntity(Entity)
+     */
+    public final Optional<Entity> getEntity(int handle) {
+        return Optional.ofNullable(mEntities.get(handle));
+    }
+
     /**
      * Returns entity from game and casts into given type.
      * @param name id of the entity.
@@ -326,17 +618,19 @@ public void run() {
      * @param stepsH steps to move entities horizontal.
      */
     public void moveEntities(int stepsV, int stepsH) {
-        mEntities.forEach((_, v) -> v.moveUnsafely(stepsV, stepsH));
+        for (int i = 0; i < mEntities.size(); i++) {
+            mEntities.entityAt(i).moveUnsafely(stepsV, stepsH);
+        }
     }
 
     /**
      * Iterates through all {@link EntityCollection} instances and applies the given action.
+     * Managers are visited in the order they were added.
      * @param entityManagerConsumer the action to perform on each {@code EntityManager}.
      */
     public final synchronized void forEachEntityManager(Consumer<EntityCollection<? extends Entity>> entityManagerConsumer) {
-        EntityCollection<?>[] entityManagers=mEntityManagers.values().toArray(new EntityCollection[0]);
-        for (EntityCollection<?> entityManager: entityManagers) {
-            entityManagerConsumer.accept(entityManager);
+        for (int i = 0; i < mEntityManagerList.size(); i++) {
+            entityManagerConsumer.accept(mEntityManagerList.get(i));
         }
     }
 
@@ -345,24 +639,19 @@ public void run() {
      * @param consumer the action to perform on each {@code AbstractEntity}.
      */
     public final synchronized void forEachEntity(Consumer<Entity> consumer) {
-        Entity[] entities=mEntities.values().toArray(new AbstractEntity[0]);
-        for (Entity entity: entities) {
-            consumer.accept(entity);
-        }
+        mEntities.forEach(consumer);
     }
 
     /**
-     * Iterates through all {@link AbstractEntity} instances,
-     * if is instanceof given type given action gets applied to it.
+     * Iterates through all {@link AbstractEntity} instances of given type and applies given action.
+     * Only matching entities are visited.
+     * @see EntityRegistry#forEach(Class, Consumer)
      * @param consumer the action to perform on each cast instance.
      * @param type     required type to apply given action on instances.
      * @param <T>      required type to cast and apply.
      */
     public final synchronized <T extends Entity> void forEachEntity(Consumer<T> consumer, Class<T> type) {
-        forEachEntity(e -> {
-            if (type.isInstance(e))
-                consumer.accept(type.cast(e));
-        });
+        mEntities.forEach(type, consumer);
     }
 
     /**
@@ -371,22 +660,25 @@ public void run() {
      * @return the number of entities that are instances of the given class.
      */
     public int countEntitiesOfType(Class<?> clazz) {
-        Collection<Entity> entities=mEntities.values();
-        int counter=0;
-        for (Entity entity: entities) {
-            if(clazz.isInstance(entity)) {
-                counter++;
-            }
-        }
-        return counter;
+        return mEntities.count(clazz);
     }
 
     /**
-     * Returns entities map.
-     * @return entities map as unmodifiable {@link Map}.
+     * Returns entities that have a name.
+     * @return copy of named entities as unmodifiable {@link Map}.
+     * @see EntityRegistry#namedEntities()
      */
     public final Map<String, Entity> getEntitiesMap() {
-        return Collections.unmodifiableMap(mEntities);
+        return Collections.unmodifiableMap(mEntities.namedEntities());
+    }
+
+    /**
+     * Returns the registry holding entities of the game.
+     * Useful for allocation-free loops and lookups by handle.
+     * @return entity registry.
+     */
+    public final EntityRegistry getEntityRegistry() {
+        return mEntities;
     }
 
     /**
@@ -420,13 +712,13 @@ public void run() {
      * @return {@code true} if collision is detected between given entity and x entity of game; {@code false} otherwise.
      */
     public boolean collidesWithXEntity(Collidable entity) {
-        for (Entity e: mEntities.values()) {
-            if(e instanceof Collidable collidable && collidable.hasCollisionWith(entity)) {
+        for (int i = 0; i < mEntities.size(); i++) {
+            if(mEntities.entityAt(i) instanceof Collidable collidable && collidable.hasCollisionWith(entity)) {
                 return true;
             }
         }
-        for(EntityCollection<?> entityManager: mEntityManagers.values()) {
-            if(entityManager.hasCollisionWith(entity)) {
+        for (int i = 0; i < mEntityManagerList.size(); i++) {
+            if(mEntityManagerList.get(i).hasCollisionWith(entity)) {
                 return true;
             }
         }
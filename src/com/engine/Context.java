@@ -3,6 +3,7 @@ package com.engine;
 import com.engine.entity.Entity;
 import com.engine.entity.Player;
 import com.engine.map.Map;
+import com.engine.view.Camera;
 import com.engine.view.DisplayableDrawer;
 
 import java.awt.event.KeyListener;
@@ -20,4 +21,13 @@ public interface Context {
     void forEachEntity(Consumer<Entity> o);
     <T extends Entity> void forEachEntity(Consumer<T> consumer, Class<T> clazz);
     Context addEntity(String name, Entity projectile);
+
+    /**
+     * Returns the camera the world is shown through.
+     * Default implementation returns {@code null}, the world is shown at screen coordinates.
+     * @return camera, null if there is none.
+     */
+    default Camera getCamera() {
+        return null;
+    }
 }
@@ -3,6 +3,8 @@ package com.engine;
 import com.engine.entity.AbstractEntity;
 import com.engine.entity.DefaultEntityManager;
 import com.engine.entity.Entity;
+import com.engine.entity.EntityFactory;
+import com.engine.entity.EntityRegistry;
 import com.engine.map.AbstractTile;
 import com.engine.map.Map;
 import org.w3c.dom.Document;
@@ -18,7 +20,6 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Objects;
 
 /**
@@ -169,7 +170,9 @@ public final class ManifestManager {
                 String typeText = entityElement.getTagName(); // get entity type as text
                 AbstractEntity entity=getEntityImplementation(typeText); // create entity with this name
                 entity.loadFromXmlElement(entityElement); // gives entity the xml element to load some properties
-                mContext.addEntity(entityElement.getAttribute("id"), entity); // adds entity to context with its ID
+                String id=entityElement.getAttribute("id"); // get entity's ID, empty if entity has no name
+                if(id.isEmpty()) mContext.addEntity(entity); // adds entity to context without name
+                else mContext.addEntity(id, entity); // adds entity to context with its ID
                 entity.startRendering(); // allows entity to draw itself
             }
         }
@@ -202,25 +205,16 @@ public final class ManifestManager {
      * <p>
      * Returns an instance of the given class.
      * Given class <i>must</i> extend {@link AbstractEntity} <i>and</i>> declare a constructor taking ({@link AbstractGame})
+     * or have a factory registered to {@link EntityFactory}.
      * </p>
+     * Class and constructor are resolved once per class by {@link EntityFactory}.
      * <b>WARNING</b> Do not use simple name of class, e.g. String; instead use full name java.lang.String
      * @param className name of class to make instance of
      * @return returns instance of class.
      * @throws ClassNotFoundException if class with given name cannot be found.
      */
     private AbstractEntity getEntityImplementation(String className) throws ClassNotFoundException {
-        try {
-            Class<?> rawClass = Class.forName(className); // get class from given name
-            if (!AbstractEntity.class.isAssignableFrom(rawClass)) // if class from given name is not assignable from AbstractEntity class
-                throw new IllegalArgumentException("Class "+className+" is not a subtype of AbstractEntity."); // throw IllegalArgumentException
-            // noinspection all
-            Class<? extends AbstractEntity> tileClass = (Class<? extends AbstractEntity>) rawClass; // convert class to abstract entity subclass
-            return tileClass.getDeclaredConstructor(AbstractGame.class).newInstance(mContext); // create and return instance of class
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException("Subclass of AbstractEntity must declare a constructor taking args (AbstractGame)");
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException("Failed to instantiate tile: " + className, e);
-        }
+        return EntityFactory.create(className, mContext);
     }
 
 
@@ -299,16 +293,19 @@ public final class ManifestManager {
      */
     private void storeEntities(final Element rootElement, final Document document) {
         Element entitiesElement=document.createElement(mEntitiesElementName); // create tag containing entities
-        mContext.getEntitiesMap().forEach((id, entity) -> { // iterate through all entities
+        EntityRegistry entities=mContext.getEntityRegistry();
+        for (int i = 0; i < entities.size(); i++) { // iterate through all entities
+            Entity entity=entities.entityAt(i);
             if(entity instanceof AbstractEntity abstractEntity) {
                 Element entityElement=document.createElement(entity.getClass().getName()); // create entity element
-                entityElement.setAttribute("id", id); // store entity's ID
+                String id=entities.getName(entities.handleAt(i)); // get entity's ID, null if entity has no name
+                if(id!=null) entityElement.setAttribute("id", id); // store entity's ID
                 abstractEntity.createXmlElement(entityElement); // give element to entity so entity stores what it wants
                 entitiesElement.appendChild(entityElement); // append entity element to entities element
             } else {
                 System.out.println("[DEBUG] Failed to store "+entity+", this is not a subclass of "+AbstractEntity.class.getName());
             }
-        });
+        }
         rootElement.appendChild(entitiesElement); // append entities element to root element
     }
 }
@@ -0,0 +1,57 @@
+package com.engine.behavior;
+
+/**
+ * Layers of the screen, drawn in the order they are declared.
+ * Each renderable declares its layer with {@link Renderable#getRenderLayer()},
+ * inside a layer drawers are drawn in the order they were added.
+ * Drawers of world layers draw at world coordinates and are moved by the camera,
+ * the others draw at screen coordinates.
+ */
+public enum RenderLayer {
+    /**
+     * Backgrounds, drawn first.
+     */
+    BACKGROUND(false),
+
+    /**
+     * Tiles of the map.
+     */
+    TILES(true),
+
+    /**
+     * Players, enemies and other entities.
+     */
+    ENTITIES(true),
+
+    /**
+     * Effects drawn over entities, e.g. particles.
+     */
+    EFFECTS(true),
+
+    /**
+     * Heads-up display, drawn last.
+     */
+    HUD(false);
+
+    /**
+     * Is {@code true} if drawers of this layer draw at world coordinates.
+     */
+    private final boolean mWorldSpace;
+
+    /**
+     * Space constructor.
+     * @param worldSpace {@code true} if drawers draw at world coordinates.
+     */
+    RenderLayer(boolean worldSpace) {
+        mWorldSpace=worldSpace;
+    }
+
+    /**
+     * Returns if drawers of this layer draw at world coordinates, transformed by the camera.
+     * @return {@code true} for world layers, {@code false} for screen layers.
+     * @see com.engine.view.Camera
+     */
+    public boolean isWorldSpace() {
+        return mWorldSpace;
+    }
+}
@@ -1,6 +1,7 @@
 package com.engine.behavior;
 
 import com.engine.entity.Entity;
+import com.engine.view.RenderCommandBuffer;
 
 import java.awt.*;
 
@@ -22,6 +23,79 @@ public interface Renderable {
          * @param graphics graphics to draw entity to.
          */
         void drawAll(Graphics2D graphics);
+
+        /**
+         * Returns if drawer changes what it draws by itself, e.g. by switching sprites over time,
+         * which means it has to be drawn every frame to be shown correctly.
+         * Default implementation assumes it does.
+         * @return {@code true} if drawer must be drawn every frame, {@code false} if it only changes when its renderable reports a change.
+         */
+        default boolean isAnimated() {
+            return true;
+        }
+
+        /**
+         * Records what this drawer draws in this frame as commands, called by the game thread.
+         * Recorded commands are replayed by the painting thread instead of calling {@link #drawAll(Graphics2D)}.
+         * Default implementation records nothing, so the drawer is called while replaying.
+         * @param buffer buffer to record commands to.
+         * @param layer layer to draw in.
+         * @return {@code true} if drawing was recorded, {@code false} if {@link #drawAll(Graphics2D)} must be called instead.
+         */
+        default boolean record(RenderCommandBuffer buffer, RenderLayer layer) {
+            return false;
+        }
+    }
+
+    /**
+     * Receives changes of renderables that are not drawn by their own drawer every frame,
+     * e.g. tiles drawn into cached images.
+     * @see #setTracker(Tracker)
+     */
+    interface Tracker {
+        /**
+         * Called when position or size of renderable may have changed.
+         * @param renderable changed renderable.
+         */
+        void boundsChanged(Renderable renderable);
+
+        /**
+         * Called when sprites of renderable changed.
+         * @param renderable changed renderable.
+         */
+        void spriteChanged(Renderable renderable);
+
+        /**
+         * Called when renderable stops rendering, e.g. when it's killed.
+         * @param renderable removed renderable.
+         */
+        void removed(Renderable renderable);
+    }
+
+    /**
+     * Returns the layer of the screen this renderable is drawn in.
+     * Read once when the renderable starts rendering.
+     * @return layer of this renderable, {@link RenderLayer#ENTITIES} by default.
+     */
+    default RenderLayer getRenderLayer() {
+        return RenderLayer.ENTITIES;
+    }
+
+    /**
+     * Sets tracker to notify about changes of this renderable.
+     * Default implementation never notifies.
+     * @param tracker tracker to notify, null to stop notifying.
+     */
+    default void setTracker(Tracker tracker) {
+    }
+
+    /**
+     * Returns tracker notified about changes of this renderable.
+     * Default implementation never notifies, so it has no tracker.
+     * @return current tracker, null if none.
+     */
+    default Tracker getTracker() {
+        return null;
     }
 
     /**
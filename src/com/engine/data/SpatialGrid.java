@@ -0,0 +1,222 @@
+package com.engine.data;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Uniform grid that indexes elements by their bounds,
+ * so elements intersecting an area can be found without visiting all elements.
+ * <p>Each element is stored in every cell its bounds intersect. Only cells that contain elements exist,
+ * so the grid has no fixed size. Elements are compared by identity.</p>
+ * @param <E> type of indexed elements.
+ */
+public class SpatialGrid<E> {
+    /**
+     * Width and height of a cell.
+     */
+    private final int mCellSize;
+
+    /**
+     * Cells by key.
+     * @see #key(int, int)
+     */
+    private final Map<Long, ArrayList<Record<E>>> mCells=new HashMap<>();
+
+    /**
+     * Record of each element.
+     */
+    private final Map<E, Record<E>> mRecords=new IdentityHashMap<>();
+
+    /**
+     * Number of the current query, marks records already visited by it.
+     */
+    private long mQuery;
+
+    /**
+     * Cell size constructor.
+     * @param cellSize width and height of a cell, about the size of the queried area works well.
+     * @throws IllegalArgumentException if cell size is not positive.
+     */
+    public SpatialGrid(int cellSize) throws IllegalArgumentException {
+        if(cellSize<=0)
+            throw new IllegalArgumentException("Cell size must be positive: "+cellSize);
+        mCellSize=cellSize;
+    }
+
+    /**
+     * Adds element with given bounds, or moves it if it's already in the grid.
+     * @param element element to add.
+     * @param x x of bounds.
+     * @param y y of bounds.
+     * @param width width of bounds.
+     * @param height height of bounds.
+     */
+    public void put(E element, int x, int y, int width, int height) {
+        Record<E> record=mRecords.get(element);
+        boolean added=record==null;
+        if(added) {
+            record=new Record<>(element);
+            mRecords.put(element, record);
+        } else if(record.mX==x&&record.mY==y&&record.mWidth==width&&record.mHeight==height) {
+            return;
+        }
+        record.mX=x;
+        record.mY=y;
+        record.mWidth=width;
+        record.mHeight=height;
+        if(!added) {
+            if(cell(x)==record.mFirstX&&cell(y)==record.mFirstY&&cell(x+Math.max(width, 1)-1)==record.mLastX
+                    &&cell(y+Math.max(height, 1)-1)==record.mLastY)
+                return; // still in the same cells
+            unlink(record);
+        }
+        link(record);
+    }
+
+    /**
+     * Removes element from the grid.
+     * @param element element to remove.
+     * @return {@code true} if element was in the grid, {@code false} otherwise.
+     */
+    public boolean remove(E element) {
+        Record<E> record=mRecords.remove(element);
+        if(record==null)
+            return false;
+        unlink(record);
+        return true;
+    }
+
+    /**
+     * Checks if element is in the grid.
+     * @param element element to check.
+     * @return {@code true} if element is in the grid, {@code false} otherwise.
+     */
+    public boolean contains(E element) {
+        return mRecords.containsKey(element);
+    }
+
+    /**
+     * Returns number of elements.
+     * @return number of elements in the grid.
+     */
+    public int size() {
+        return mRecords.size();
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        mCells.clear();
+        mRecords.clear();
+    }
+
+    /**
+     * Applies given action once on each element whose bounds intersect given area.
+     * Elements must not be added or removed by the action.
+     * @param area area to query.
+     * @param action action to apply.
+     */
+    public void query(Rectangle area, Consumer<? super E> action) {
+        if(area.width<=0||area.height<=0)
+            return;
+        long query=++mQuery;
+        int lastX=cell(area.x+area.width-1), lastY=cell(area.y+area.height-1);
+        for (int cy = cell(area.y); cy <= lastY; cy++) {
+            for (int cx = cell(area.x); cx <= lastX; cx++) {
+                ArrayList<Record<E>> cell=mCells.get(key(cx, cy));
+                if(cell==null)
+                    continue;
+                for (int i = 0; i < cell.size(); i++) {
+                    Record<E> record=cell.get(i);
+                    if(record.mQuery!=query&&record.intersects(area)) {
+                        record.mQuery=query;
+                        action.accept(record.mElement);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds record to the cells of its bounds.
+     * @param record record to add.
+     */
+    private void link(Record<E> record) {
+        record.mFirstX=cell(record.mX);
+        record.mFirstY=cell(record.mY);
+        record.mLastX=cell(record.mX+Math.max(record.mWidth, 1)-1);
+        record.mLastY=cell(record.mY+Math.max(record.mHeight, 1)-1);
+        for (int cy = record.mFirstY; cy <= record.mLastY; cy++) {
+            for (int cx = record.mFirstX; cx <= record.mLastX; cx++) {
+                mCells.computeIfAbsent(key(cx, cy), _ -> new ArrayList<>(4)).add(record);
+            }
+        }
+    }
+
+    /**
+     * Removes record from the cells it's linked to.
+     * @param record record to remove.
+     */
+    private void unlink(Record<E> record) {
+        for (int cy = record.mFirstY; cy <= record.mLastY; cy++) {
+            for (int cx = record.mFirstX; cx <= record.mLastX; cx++) {
+                long key=key(cx, cy);
+                ArrayList<Record<E>> cell=mCells.get(key);
+                if(cell==null)
+                    continue;
+                int index=cell.indexOf(record);
+                if(index>=0) { // swap with last, order inside a cell does not matter
+                    int last=cell.size()-1;
+                    cell.set(index, cell.get(last));
+                    cell.remove(last);
+                }
+                if(cell.isEmpty())
+                    mCells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns cell coordinate of given position.
+     * @param position x or y.
+     * @return column or row of cell.
+     */
+    private int cell(int position) {
+        return Math.floorDiv(position, mCellSize);
+    }
+
+    /**
+     * Packs cell coordinates into a key.
+     * @param cx cell column.
+     * @param cy cell row.
+     * @return key of the cell.
+     */
+    private static long key(int cx, int cy) {
+        return ((long) cx<<32)|(cy&0xffffffffL);
+    }
+
+    /**
+     * Element with its bounds and the cells it's linked to.
+     * @param <E> type of element.
+     */
+    private static final class Record<E> {
+        private final E mElement;
+        private int mX, mY, mWidth, mHeight;
+        private int mFirstX, mFirstY, mLastX, mLastY;
+        private long mQuery;
+
+        private Record(E element) {
+            mElement=element;
+        }
+
+        private boolean intersects(Rectangle area) {
+            return mX<area.x+area.width&&area.x<mX+Math.max(mWidth, 1)
+                    &&mY<area.y+area.height&&area.y<mY+Math.max(mHeight, 1);
+        }
+    }
+}
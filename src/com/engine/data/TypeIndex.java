@@ -0,0 +1,186 @@
+package com.engine.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Index that groups elements by type, so type-filtered loops and counts
+ * only visit the elements that match.
+ * <p>A bucket is created the first time a type (class or interface) is asked for,
+ * by scanning all elements once through the source given to the constructor.
+ * After that, buckets are kept up to date by {@link #add(Object)}, {@link #remove(Object)}
+ * and {@link #markRemoved(Object)}/{@link #flushRemoved()}.</p>
+ * Removed elements are dropped in batches, with one sweep per bucket before the next query,
+ * so removing one element does not shift a bucket each time.
+ * Buckets keep the order elements were added.
+ * @param <E> type of indexed elements.
+ */
+public class TypeIndex<E> {
+    /**
+     * Buckets of elements by queried type.
+     */
+    private final Map<Class<?>, Bucket> mBuckets=new HashMap<>();
+
+    /**
+     * Buckets each concrete class of element belongs to.
+     * Cleared each time a new bucket is created.
+     */
+    private final Map<Class<?>, Bucket[]> mBucketsByClass=new HashMap<>();
+
+    /**
+     * Elements marked for removal.
+     * @see #markRemoved(Object)
+     */
+    private final Set<Object> mRemoved=Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Gives all current elements to the consumer, used to fill new buckets.
+     */
+    private final Consumer<Consumer<? super E>> mSource;
+
+    /**
+     * Source constructor.
+     * @param source gives all current elements to the given consumer, e.g. {@code list::forEach}.
+     */
+    public TypeIndex(Consumer<Consumer<? super E>> source) {
+        mSource=source;
+    }
+
+    /**
+     * Adds element to the buckets of its types.
+     * @param element element to add.
+     */
+    public void add(E element) {
+        if(mBuckets.isEmpty()) return;
+        if(mRemoved.remove(element)) return; // still in its buckets
+        for (Bucket bucket: bucketsOf(element.getClass())) {
+            bucket.add(element);
+        }
+    }
+
+    /**
+     * Removes element from the buckets of its types.
+     * Same as {@link #markRemoved(Object)}, buckets drop it before the next query.
+     * @param element element to remove.
+     */
+    public void remove(E element) {
+        markRemoved(element);
+    }
+
+    /**
+     * Marks element as removed, buckets drop it on {@link #flushRemoved()} or before the next query.
+     * @param element removed element.
+     */
+    public void markRemoved(E element) {
+        if(!mBuckets.isEmpty()) mRemoved.add(element);
+    }
+
+    /**
+     * Drops all elements marked by {@link #markRemoved(Object)} with one sweep per bucket.
+     */
+    public void flushRemoved() {
+        if(mRemoved.isEmpty()) return;
+        for (Bucket bucket: mBuckets.values()) {
+            bucket.removeMarked(mRemoved);
+        }
+        mRemoved.clear();
+    }
+
+    /**
+     * Drops all buckets, they will be filled again from the source when asked for.
+     */
+    public void clear() {
+        mBuckets.clear();
+        mBucketsByClass.clear();
+        mRemoved.clear();
+    }
+
+    /**
+     * Applies given action on each element of given type.
+     * @param type type of elements to visit.
+     * @param action action to apply.
+     * @param <S> type of elements to visit.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> void forEach(Class<S> type, Consumer<? super S> action) {
+        Bucket bucket=bucket(type);
+        for (int i = 0; i < bucket.mSize; i++) {
+            action.accept((S) bucket.mItems[i]);
+        }
+    }
+
+    /**
+     * Counts elements of given type.
+     * @param type type of elements to count.
+     * @return number of elements that are instances of given type.
+     */
+    public int count(Class<?> type) {
+        return bucket(type).mSize;
+    }
+
+    /**
+     * Returns bucket of given type, fills a new one from the source if needed.
+     * @param type type of the bucket.
+     * @return bucket of given type.
+     */
+    private Bucket bucket(Class<?> type) {
+        flushRemoved();
+        Bucket bucket=mBuckets.get(type);
+        if(bucket==null) {
+            Bucket newBucket=new Bucket();
+            mSource.accept(element -> {
+                if(type.isInstance(element)) newBucket.add(element);
+            });
+            mBuckets.put(type, newBucket);
+            mBucketsByClass.clear();
+            bucket=newBucket;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns buckets elements of given class belong to.
+     * @param clazz concrete class of an element.
+     * @return buckets of all types given class is assignable to.
+     */
+    private Bucket[] bucketsOf(Class<?> clazz) {
+        Bucket[] buckets=mBucketsByClass.get(clazz);
+        if(buckets==null) {
+            buckets=mBuckets.entrySet().stream()
+                    .filter(entry -> entry.getKey().isAssignableFrom(clazz))
+                    .map(Map.Entry::getValue)
+                    .toArray(Bucket[]::new);
+            mBucketsByClass.put(clazz, buckets);
+        }
+        return buckets;
+    }
+
+    /**
+     * Array-backed list of elements of one type.
+     */
+    private static final class Bucket {
+        private Object[] mItems=new Object[16];
+        private int mSize;
+
+        private void add(Object item) {
+            if(mSize==mItems.length)
+                mItems=Arrays.copyOf(mItems, mSize*2);
+            mItems[mSize++]=item;
+        }
+
+        private void removeMarked(Set<Object> marked) {
+            int kept=0;
+            for (int i = 0; i < mSize; i++) {
+                if(!marked.contains(mItems[i]))
+                    mItems[kept++]=mItems[i];
+            }
+            Arrays.fill(mItems, kept, mSize, null);
+            mSize=kept;
+        }
+    }
+}
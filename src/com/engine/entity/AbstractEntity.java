@@ -7,24 +7,30 @@ import com.engine.animation.Animatable;
 import com.engine.animation.Animation;
 import com.engine.animation.Direction;
 import com.engine.behavior.Collidable;
+import com.engine.behavior.RenderLayer;
 import com.engine.behavior.Renderable;
 import com.engine.event.Listener;
 import com.engine.map.AbstractMap;
 import com.engine.map.Map;
+import com.engine.sprite.Sprite;
+import com.engine.sprite.SpriteAnimator;
+import com.engine.sprite.SpriteCache;
 import com.engine.view.AbstractGameScreen;
+import com.engine.view.CachedText;
 import com.engine.view.DisplayableDrawer;
+import com.engine.view.QualityGovernor;
+import com.engine.view.RenderCommandBuffer;
 import org.w3c.dom.Element;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.IOException;
+import java.net.URL;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.FileSystems;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Objects;
-import java.util.function.Function;
 
 /**
  * Superclass of every entity inside the game.<br>
@@ -54,21 +60,21 @@ public abstract class AbstractEntity implements Animatable, Entity {
      * Method keyDown is called when event starts, and keyUp is called when event ends.
      * @see #addEventListener(EventType, Listener)
      */
-    private final java.util.List<Listener> mDashListeners =new ArrayList<>();
+    private java.util.List<Listener> mDashListeners =new ArrayList<>();
 
     /**
      * Listeners that listens to jump events.
      * Method keyDown is called when event starts, and keyUp is called when event ends.
      * @see #addEventListener(EventType, Listener)
      */
-    private final java.util.List<Listener> mJumpListeners =new ArrayList<>();
+    private java.util.List<Listener> mJumpListeners =new ArrayList<>();
 
     /**
      * Listeners that listens to fall events.
      * Method keyDown is called when event starts, and keyUp is called when event ends.
      * @see #addEventListener(EventType, Listener)
      */
-    private final java.util.List<Listener> mFallListeners =new ArrayList<>();
+    private java.util.List<Listener> mFallListeners =new ArrayList<>();
 
     /**
      * current direction of the player.
@@ -127,7 +133,7 @@ public abstract class AbstractEntity implements Animatable, Entity {
      * Entity's hitbox.
      * @see #updateHitbox(Rectangle)
      */
-    private final Rectangle mHitbox;
+    private Rectangle mHitbox;
 
     /**
      * Is {@code true} if entity is solid, false if not.
@@ -189,6 +195,12 @@ public abstract class AbstractEntity implements Animatable, Entity {
      */
     private boolean mOnDash=false;
 
+    /**
+     * Tracker notified about bounds and sprite changes, null if entity is not tracked.
+     * @see #setTracker(Renderable.Tracker)
+     */
+    private Renderable.Tracker mTracker;
+
     /**
      * Context constructor.
      * Creates new AbstractEntity and adds it's drawer to main screen.
@@ -206,6 +218,33 @@ public abstract class AbstractEntity implements Animatable, Entity {
         System.out.println("[DEBUG] Entity "+this+" spawned!");
     }
 
+    /**
+     * Creates a copy of this entity, used to create entities from a prototype.
+     * The copy keeps context, configuration, position and state of this entity,
+     * but gets its own hitbox, listener lists and drawer. Sprites are shared through {@link SpriteCache}.
+     * <p>Entity <i>must</i> implement {@link Cloneable}. Subclasses keeping mutable state
+     * in their own fields should override this method and copy that state too.</p>
+     * @return copy of this entity.
+     * @throws UnsupportedOperationException if entity does not implement {@link Cloneable}.
+     * @see EntityFactory#registerPrototype(AbstractEntity)
+     */
+    public AbstractEntity copy() throws UnsupportedOperationException {
+        try {
+            AbstractEntity copy=(AbstractEntity) super.clone();
+            copy.mHitbox=new Rectangle(mHitbox);
+            copy.mDashListeners=new ArrayList<>(mDashListeners);
+            copy.mJumpListeners=new ArrayList<>(mJumpListeners);
+            copy.mFallListeners=new ArrayList<>(mFallListeners);
+            copy.mDrawer=null;
+            copy.mTracker=null;
+            copy.mAnimation=null;
+            copy.mAnimating=false;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new UnsupportedOperationException("Entity "+this+" does not implement Cloneable.", e);
+        }
+    }
+
     /**
      * Gets distance between this and a point.
      * @param point other point.
@@ -311,6 +350,7 @@ public abstract class AbstractEntity implements Animatable, Entity {
         worldX=newPosition.x;
         worldY=newPosition.y;
         updateHitbox(mHitbox);
+        if(mTracker!=null) mTracker.boundsChanged(this);
     }
 
     /**
@@ -529,7 +569,7 @@ public abstract class AbstractEntity implements Animatable, Entity {
             updateAnimation();
             handleFall();
             handleJump();
-            mDirection=currentDirection();
+            setDirection(currentDirection());
             checkGround();
 
             if(mDashEndTime_millis <AbstractGame.gameTimeMillis()&&mCurrentSpeed>mDefaultSpeed&&mOnDash) {
@@ -540,6 +580,7 @@ public abstract class AbstractEntity implements Animatable, Entity {
             }
         }
         updateHitbox(mHitbox);
+        if(mTracker!=null) mTracker.boundsChanged(this);
     }
 
     /**
@@ -615,7 +656,10 @@ public abstract class AbstractEntity implements Animatable, Entity {
      * @param direction direction to set {@code mDirection} equal to.
      */
     protected void setDirection(Direction direction) {
+        if(direction==mDirection)
+            return;
         this.mDirection=direction;
+        if(mTracker!=null) mTracker.spriteChanged(this);
     }
 
     /**
@@ -650,6 +694,30 @@ public abstract class AbstractEntity implements Animatable, Entity {
         mIsAlive = false;
         System.out.println(getDeathMessage());
         context.getDisplay(DisplayableDrawer.class).removeRenderable(this);
+        if(mDrawer instanceof AbstractDrawer drawer)
+            drawer.releaseSprites();
+        if(mTracker!=null) mTracker.removed(this);
+    }
+
+    /**
+     * Sets tracker notified when entity moves, resizes, changes sprites or is killed.
+     * The render pipeline tracks entities it draws, so the sprite animation only runs while entity is tracked.
+     * @param tracker tracker to notify, null to stop notifying.
+     */
+    @Override
+    public void setTracker(Renderable.Tracker tracker) {
+        mTracker=tracker;
+        if(mDrawer instanceof AbstractDrawer drawer)
+            drawer.updateClip();
+    }
+
+    /**
+     * Returns tracker notified about changes of this entity.
+     * @return current tracker, null if entity is not tracked.
+     */
+    @Override
+    public Renderable.Tracker getTracker() {
+        return mTracker;
     }
 
     /**
@@ -719,6 +787,7 @@ public abstract class AbstractEntity implements Animatable, Entity {
         worldX += stepsH;
         worldY += stepsV;
         updateHitbox(mHitbox);
+        if(mTracker!=null) mTracker.boundsChanged(this);
     }
 
     /**
@@ -831,7 +900,8 @@ public abstract class AbstractEntity implements Animatable, Entity {
      */
     @Override
     public String toString() {
-        return String.format("E:%s,x%dy%d,h%d,sol%B,sta%B", getClass().getSimpleName(), worldX, worldY, hashCode(), mIsSolid, mStatic);
+        return "E:"+getClass().getSimpleName()+",x"+worldX+"y"+worldY+",h"+hashCode()
+                +",sol"+(mIsSolid?"TRUE":"FALSE")+",sta"+(mStatic?"TRUE":"FALSE");
     }
 
     /**
@@ -866,28 +936,46 @@ public abstract class AbstractEntity implements Animatable, Entity {
          * @see #drawAll(Graphics2D)
          */
         public static boolean sDrawDebug =false;
+
         /**
-         * The delay time on sprite change as milliseconds.
-         * @see #nextSprite()  {@link #drawAll(Graphics2D)}
+         * Is {@code true} for drawer classes that do not override {@link #drawEntity(Graphics2D)},
+         * which only draw their sprite and can be recorded.
+         * @see #isRecordable()
          */
-        private long mChangeSpriteDelay_millis =400; // default value
-
+        private static final ClassValue<Boolean> smDefaultDrawing=new ClassValue<>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                for (Class<?> c = type; c != AbstractDrawer.class; c = c.getSuperclass()) {
+                    try {
+                        c.getDeclaredMethod("drawEntity", Graphics2D.class);
+                        return false;
+                    } catch (NoSuchMethodException e) {
+                        // not overridden by this class, check its superclass
+                    }
+                }
+                return true;
+            }
+        };
         /**
-         * Stores the last time a sprite has changed
-         * @see #nextSprite()  {@link #drawAll(Graphics2D)}
+         * Frame counter of the sprite animation, advanced by the shared {@link SpriteAnimator}
+         * while more than one sprite is loaded for a direction and the entity is tracked by a screen drawing it.
+         * Default delay between sprite changes is 400 milliseconds.
+         * Each frame change is reported to the tracker, so the entity is only repainted when its sprite changes.
+         * @see #setSpriteDelay(long)
          */
-        private long mLastSpriteChangeTime_millis =AbstractGame.gameTimeMillis();
+        private final SpriteAnimator.Clip mClip=new SpriteAnimator.Clip(400, this::spriteChanged);
 
         /**
          * Sprites arrays for Directions.
          */
-        private final java.util.Map<Direction, Image[]> mSpritesMap=new HashMap<>();
+        private final java.util.Map<Direction, Sprite[]> mSpritesMap=new HashMap<>();
 
         /**
-         * Store the index of the current sprite
-         * @see #nextSprite()
+         * Resources each direction's sprites were acquired from.
+         * @see SpriteCache
+         * @see #releaseSprites()
          */
-        private int mCurrentSprite_idx =0;
+        private final java.util.Map<Direction, URL[]> mSpriteResources=new HashMap<>();
 
         /**
          * Current custom sprite
@@ -900,6 +988,12 @@ public abstract class AbstractEntity implements Animatable, Entity {
          */
         private long mCustomSpriteEndTime_millis;
 
+        /**
+         * Debug text of the entity, laid out again only when it changes.
+         * @see #sDrawDebug
+         */
+        private final CachedText mDebugText=new CachedText();
+
         /**
          * No-args constructor, after creating object you must load sprites with
          * {@link #loadSprites(String, Direction, String...)} method.
@@ -915,6 +1009,7 @@ public abstract class AbstractEntity implements Animatable, Entity {
         public void useOnlyCustomSprite(Image sprite) {
             mCustomSprite=sprite;
             mCustomSpriteEndTime_millis=-1;
+            spriteChanged();
         }
 
         /**
@@ -925,14 +1020,15 @@ public abstract class AbstractEntity implements Animatable, Entity {
         public void useCustomSprite(Image sprite, long millis) {
             mCustomSprite=sprite;
             mCustomSpriteEndTime_millis=AbstractGame.gameTimeMillis()+millis;
+            spriteChanged();
         }
 
         /**
          * Sets how long will the gap between sprite changes be.
          * @param millis sets how long it will take to change sprites.
-         * @see #nextSprite()
+         * @see SpriteAnimator.Clip#setFrameDuration(long)
          */
-        public void setSpriteDelay(long millis) { mChangeSpriteDelay_millis=millis; }
+        public void setSpriteDelay(long millis) { mClip.setFrameDuration(Math.max(1, millis)); }
 
         /**
          * Returns current sprite.
@@ -941,91 +1037,160 @@ public abstract class AbstractEntity implements Animatable, Entity {
          */
         protected Image getCurrentSprite() throws ArrayIndexOutOfBoundsException {
             if(mCustomSprite!=null) return mCustomSprite;
-            return mSpritesMap.get(getDirection())[mCurrentSprite_idx];
-        }
-
-        /**
-         * Loads the next sprite if change sprite delay has ended.
-         * if array ends, first sprite is loaded.
-         */
-        protected final void nextSprite() {
-            if(mCustomSpriteEndTime_millis==-1)
-                return;
-            if(System.currentTimeMillis()>=mLastSpriteChangeTime_millis +mChangeSpriteDelay_millis) {
-                mLastSpriteChangeTime_millis=System.currentTimeMillis();
-                mCurrentSprite_idx++;
-            }
-            checkSpriteIdx();
+            Sprite[] sprites=mSpritesMap.get(getDirection());
+            return sprites[mClip.getFrame()%sprites.length].getImage();
         }
 
         /**
-         * Check the current sprite dix.
-         * if it's bigger or equal to the current direction related sprites array,
-         * it will set to 0.
-         * If using custom sprite forever, check will be ignored.
-         * @see #nextSprite()
-         * @see #mCurrentSprite_idx
-         * @see #mCustomSprite
+         * Returns current loaded sprite, which may be a region of an atlas page.
+         * @return current sprite, null if a custom sprite is used.
+         * @throws ArrayIndexOutOfBoundsException if no sprites are loaded.
+         * @see #getCurrentSprite()
          */
-        private void checkSpriteIdx() {
-            if(mCustomSpriteEndTime_millis==-1) // using custom sprite until manually removed.
-                return;
-            Image[] sprites=mSpritesMap.get(getDirection());
-            if(sprites!=null&&sprites.length<=mCurrentSprite_idx) {
-                mCurrentSprite_idx = 0;
-            }
+        protected Sprite getCurrentSpriteRegion() throws ArrayIndexOutOfBoundsException {
+            if(mCustomSprite!=null) return null;
+            Sprite[] sprites=mSpritesMap.get(getDirection());
+            return sprites[mClip.getFrame()%sprites.length];
         }
 
         /**
          * Erases old sprites and loads new.
+         * Sprites are taken from the shared {@link SpriteCache}, each image is decoded once
+         * and shared by all drawers using it, and may be packed into an atlas later.
          * @param resourcesRoot directory which contains all the sprites.
          * @param resources names of files.
          * @throws IOException when ImageIO.read() fails.
          * @throws IllegalArgumentException when ImageIO.read() fails.
          */
         public final void loadSprites(String resourcesRoot, Direction direction, String... resources) throws IOException, IllegalArgumentException {
-            Function<Integer, Image> load= integer -> {
-                try {
-                    return ImageIO.read(Objects.requireNonNull(getClass().getResource(resourcesRoot + FileSystems.getDefault().getSeparator() + resources[integer])));
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+            SpriteCache cache=SpriteCache.getShared();
+            URL[] urls=new URL[resources.length];
+            Sprite[] sprites=new Sprite[resources.length];
+            try {
+                for (int i = 0; i < sprites.length; i++) {
+                    urls[i]=Objects.requireNonNull(getClass().getResource(resourcesRoot + FileSystems.getDefault().getSeparator() + resources[i]));
+                    sprites[i]=cache.acquire(urls[i]);
                 }
-            };
-
-            Image[] sprites=new Image[resources.length];
-            for (int i = 0; i < sprites.length; i++) {
-                sprites[i] = load.apply(i);
+            } catch (IOException | RuntimeException e) {
+                for (int i = 0; i < sprites.length&&sprites[i]!=null; i++) {
+                    cache.release(urls[i]);
+                }
+                throw e;
             }
+            release(mSpriteResources.put(direction, urls));
             mSpritesMap.put(direction, sprites);
+            updateClip();
+            spriteChanged();
+        }
+
+        /**
+         * Registers the animation clip while entity is drawn by a tracking screen and has animated sprites,
+         * unregisters it otherwise, so entities removed from screen or from the game without being killed
+         * do not stay in the shared {@link SpriteAnimator}.
+         * @see #setTracker(Renderable.Tracker)
+         */
+        private void updateClip() {
+            if(mTracker!=null&&!mSpriteResources.isEmpty()&&hasSpriteAnimation())
+                SpriteAnimator.getShared().register(mClip);
+            else
+                SpriteAnimator.getShared().unregister(mClip);
+        }
+
+        /**
+         * Returns if a direction has more than one sprite, which are switched by the animation clip.
+         * @return {@code true} if sprites are animated, {@code false} otherwise.
+         */
+        public boolean hasSpriteAnimation() {
+            for (Sprite[] sprites : mSpritesMap.values()) {
+                if(sprites.length>1) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns if drawer changes sprites by itself while drawing,
+         * which means it has to be drawn every frame to be shown correctly.
+         * Sprite animations are not, their frame changes are reported to the tracker.
+         * Custom drawers are, what a custom {@link #drawEntity(Graphics2D)} draws is not reported.
+         * @return {@code true} if a custom sprite expires while drawing or {@link #drawEntity(Graphics2D)} is overridden,
+         *         {@code false} otherwise.
+         */
+        @Override
+        public boolean isAnimated() {
+            if(mCustomSprite!=null&&mCustomSpriteEndTime_millis!=-1)
+                return true;
+            return !smDefaultDrawing.get(getClass());
+        }
+
+        /**
+         * Notifies tracker of the entity that sprites changed.
+         */
+        private void spriteChanged() {
+            if(mTracker!=null) mTracker.spriteChanged(AbstractEntity.this);
+        }
+
+        /**
+         * Releases all sprites of this drawer in the {@link SpriteCache}.
+         * Sprites stay loaded in this drawer, so it can still draw until it's removed from screen.
+         * Called when entity is killed.
+         */
+        public final void releaseSprites() {
+            for (URL[] urls : mSpriteResources.values()) {
+                release(urls);
+            }
+            mSpriteResources.clear();
+            SpriteAnimator.getShared().unregister(mClip);
+        }
+
+        /**
+         * Releases given sprites in the {@link SpriteCache}.
+         * @param urls resources of sprites, can be null.
+         */
+        private void release(URL[] urls) {
+            if(urls==null) return;
+            for (URL url : urls) {
+                SpriteCache.getShared().release(url);
+            }
         }
 
         /**
          * Draws Entity to given graphics.
+         * Default implementation draws the current sprite with {@link #defaultDraw(Graphics2D)},
+         * drawers that keep it are recorded instead of being called while replaying.
          * @param graphics graphics to draw the entity.
+         * @see #isRecordable()
          */
-        protected abstract void drawEntity(Graphics2D graphics);
+        protected void drawEntity(Graphics2D graphics) {
+            defaultDraw(graphics);
+        }
 
         /**
          * Draws everything about related entity.
+         * Screen calls this only if entity is visible.
          * @param graphics graphics to draw stuff.
+         * @see com.engine.view.RenderPipeline
          */
         public final void drawAll(Graphics2D graphics) {
-            // return if entity is not visible
-            if (getWorldX()+getWidth() < 0 || getWorldX() > context.getDisplay(DisplayableDrawer.class).dimension().width) {
-                return;
-            }
-            nextSprite();
+            render(graphics);
+        }
+
+        /**
+         * Draws everything about related entity, even if entity is not on screen.
+         * Used to draw entities into offscreen images.
+         * @param graphics graphics to draw stuff.
+         * @see #drawAll(Graphics2D)
+         */
+        public final void render(Graphics2D graphics) {
             drawEntity(graphics);
-            if(mCustomSprite!=null&&mCustomSpriteEndTime_millis!=-1&& mCustomSpriteEndTime_millis<AbstractGame.gameTimeMillis()) {
-                mCustomSprite=null;
-            }
-            if(sDrawDebug) {
+            checkCustomSprite();
+            if(drawsDebug()) {
                 graphics.setColor(Color.ORANGE);
                 graphics.drawRect(worldX, worldY, width, height);
                 graphics.setColor(Color.GREEN);
                 graphics.drawRect(mHitbox.x, mHitbox.y, mHitbox.width, mHitbox.height);
                 graphics.fillOval(worldX+width/2, worldY+height+5, 10, 10);
-                drawString(AbstractEntity.this.toString().replace(',', '\n'), graphics, worldX, mHitbox.y);
+                mDebugText.set(AbstractEntity.this.toString().replace(',', '\n'));
+                mDebugText.draw(graphics, worldX, mHitbox.y);
             }
         }
 
@@ -1052,23 +1217,79 @@ public abstract class AbstractEntity implements Animatable, Entity {
             }
         }
 
+        /**
+         * Records the current sprite at the bounds of the entity, if {@link #isRecordable()}.
+         * Sprites change here instead of while drawing, so the painting thread reads no entity state.
+         * @param buffer buffer to record commands to.
+         * @param layer layer to draw in.
+         * @return {@code true} if recorded, {@code false} if drawer is not recordable or debug drawing is enabled.
+         */
+        @Override
+        public boolean record(RenderCommandBuffer buffer, RenderLayer layer) {
+            if(!isRecordable()||drawsDebug())
+                return false;
+            Sprite sprite=getCurrentSpriteRegion();
+            if(sprite==null)
+                buffer.drawImage(mCustomSprite, worldX, worldY, width, height, layer);
+            else
+                buffer.drawSprite(sprite, worldX, worldY, width, height, layer);
+            checkCustomSprite();
+            return true;
+        }
+
+        /**
+         * Returns if {@link #drawEntity(Graphics2D)} only draws with {@link #defaultDraw(Graphics2D)},
+         * so drawing can be recorded as a sprite command instead of calling it.
+         * Default implementation returns {@code true} if the class of this drawer does not override
+         * {@link #drawEntity(Graphics2D)}, checked once per class. Drawers overriding it to only call
+         * {@link #defaultDraw(Graphics2D)} can override this to return {@code true} too.
+         * Drawers that are not recorded are called while replaying, one at a time even when strips are rendered in parallel.
+         * @return {@code true} if drawing can be recorded, {@code false} otherwise.
+         * @see #record(RenderCommandBuffer, RenderLayer)
+         */
+        protected boolean isRecordable() {
+            return smDefaultDrawing.get(getClass());
+        }
+
+        /**
+         * Returns if debug overlays are drawn, they are left out while the quality tier is lowered.
+         * @return {@code true} if {@link #sDrawDebug} is set and the quality tier allows overlays.
+         * @see QualityGovernor.Tier#drawsDebugOverlays()
+         */
+        private static boolean drawsDebug() {
+            return sDrawDebug&&QualityGovernor.getShared().getTier().drawsDebugOverlays();
+        }
+
+        /**
+         * Removes custom sprite when its time is over.
+         */
+        private void checkCustomSprite() {
+            if(mCustomSprite!=null&&mCustomSpriteEndTime_millis!=-1&& mCustomSpriteEndTime_millis<AbstractGame.gameTimeMillis()) {
+                mCustomSprite=null;
+            }
+        }
+
         /**
          * Draws with default configuration in given graphics.
          * @param graphics graphics to draw the entity.
          */
         protected final void defaultDraw(Graphics2D graphics) {
-            checkSpriteIdx();
-            graphics.drawImage(getCurrentSprite(), worldX, worldY, width, height, null);
+            Sprite sprite=getCurrentSpriteRegion();
+            if(sprite==null)
+                graphics.drawImage(mCustomSprite, worldX, worldY, width, height, null);
+            else
+                sprite.draw(graphics, worldX, worldY, width, height);
         }
 
         /**
          * Removes custom sprite.
-         * Sprite and current sprite index check will continue.
-         * @see #checkSpriteIdx()
+         * Drawer goes on with the current frame of its sprite animation.
+         * @see #setSpriteDelay(long)
          */
         public void removeCustomSprite() {
             mCustomSprite=null;
             mCustomSpriteEndTime_millis=0;
+            spriteChanged();
         }
     }
 }
@@ -3,9 +3,11 @@ package com.engine.entity;
 import com.engine.AbstractGame;
 import com.engine.behavior.Collidable;
 import com.engine.behavior.Updatable;
+import com.engine.data.TypeIndex;
 
 import java.awt.*;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Class manages entities of type T.
@@ -17,6 +19,48 @@ public class DefaultEntityManager<T extends Entity> extends ArrayList<T> impleme
      */
     protected final AbstractGame context;
 
+    /**
+     * Number of alive entities, counted by the last sweep of {@link #update()}
+     * and kept up to date by {@link #add(Entity)}.
+     * Trusted only while {@link #mCountedModCount} equals {@code modCount},
+     * any other structural change makes {@link #getLiveCount()} count again.
+     */
+    private int mLiveCount;
+
+    /**
+     * Value of {@code modCount} when {@link #mLiveCount} was last known to be right.
+     */
+    private int mCountedModCount=-1;
+
+    /**
+     * Entities grouped by type, used by {@link #forEachOfType(Class, Consumer)}
+     * and {@link #countOfType(Class)}, created on first use.
+     * Kept up to date by {@link #add(Entity)} and {@link #update()},
+     * any other structural change drops its buckets.
+     */
+    private transient TypeIndex<T> mTypes;
+
+    /**
+     * Value of {@code modCount} when {@link #mTypes} was last known to be right.
+     */
+    private int mIndexedModCount;
+
+    /**
+     * Is {@code true} while {@link #update()} sweeps entities.
+     */
+    private boolean mUpdating;
+
+    /**
+     * Entities added while {@link #update()} sweeps, appended at the end of the sweep.
+     */
+    private final ArrayList<T> mSpawned=new ArrayList<>();
+
+    /**
+     * Entities removed while {@link #update()} sweeps, dropped at the end of the sweep
+     * so the sweep cursors are not shifted under it.
+     */
+    private final Set<T> mDespawned=Collections.newSetFromMap(new IdentityHashMap<>());
+
     /**
      * Context constructor.
      * @param context this context.
@@ -51,11 +95,72 @@ public class DefaultEntityManager<T extends Entity> extends ArrayList<T> impleme
         return Optional.empty();
     }
 
+    /**
+     * Appends the specified entity to the end of this manager.
+     * Keeps {@link #mLiveCount} up to date.
+     * Entities added while {@link #update()} sweeps are appended when the sweep ends.
+     * @param t entity to be appended.
+     * @return {@code true} (as specified by {@link java.util.Collection#add})
+     */
+    @Override
+    public boolean add(T t) {
+        if(mUpdating)
+            return mSpawned.add(t);
+        boolean counted=mCountedModCount==modCount;
+        boolean indexed=mIndexedModCount==modCount;
+        boolean added=super.add(t);
+        if(counted&&added) {
+            if(t.isGarbage()) mLiveCount++;
+            mCountedModCount=modCount;
+        }
+        if(indexed&&added) {
+            if(mTypes!=null) mTypes.add(t);
+            mIndexedModCount=modCount;
+        }
+        return added;
+    }
+
+    /**
+     * Appends all given entities, like {@link #add(Entity)}.
+     * Entities added while {@link #update()} sweeps are appended when the sweep ends.
+     * @param c entities to be appended.
+     * @return {@code true} if this manager changed.
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        if(mUpdating)
+            return mSpawned.addAll(c);
+        return super.addAll(c);
+    }
+
+    /**
+     * Removes given entity.
+     * Entities removed while {@link #update()} sweeps are removed when the sweep ends.
+     * @param tile entity to remove.
+     * @return {@code true} if this manager contained the entity.
+     */
     @Override
     public boolean remove(T tile) {
+        if(mUpdating)
+            return mSpawned.remove(tile)||(contains(tile)&&mDespawned.add(tile));
         return super.remove(tile);
     }
 
+    /**
+     * Removes entity at given index.
+     * Entities removed while {@link #update()} sweeps are removed when the sweep ends.
+     * @param index index of entity to remove.
+     * @return removed entity.
+     */
+    @Override
+    public T remove(int index) {
+        if(!mUpdating)
+            return super.remove(index);
+        T t=get(index);
+        mDespawned.add(t);
+        return t;
+    }
+
     @Override
     public T[] getEntities(T[] arr) {
         return toArray(arr);
@@ -63,30 +168,122 @@ public class DefaultEntityManager<T extends Entity> extends ArrayList<T> impleme
 
     /**
      * Updates all containing entities and removes dead ones.
+     * Dead entities are removed with a single compaction sweep, alive entities
+     * are shifted down over the dead ones and the tail is cut once,
+     * so removing many entities in the same tick costs O(n) and keeps the order.
+     * Entities spawned while sweeping are appended after the sweep and first updated on the next call,
+     * entities removed while sweeping are dropped by a second pass over the kept ones.
      */
     public void update() {
-        Iterator<T> iter=iterator();
-        while(iter.hasNext()) {
-            T t=iter.next();
-            t.update();
-            if(!t.isGarbage()) {
-                iter.remove();
+        int kept=0;
+        mUpdating=true;
+        try {
+            for (int i = 0; i < size(); i++) {
+                T t=get(i);
+                t.update();
+                if(t.isGarbage()) {
+                    if(kept!=i) set(kept, t);
+                    kept++;
+                } else if(mTypes!=null) {
+                    mTypes.markRemoved(t);
+                }
+            }
+        } finally {
+            mUpdating=false;
+        }
+        if(!mDespawned.isEmpty()) {
+            int left=0;
+            for (int i = 0; i < kept; i++) {
+                T t=get(i);
+                if(mDespawned.contains(t)) {
+                    if(mTypes!=null) mTypes.markRemoved(t);
+                } else {
+                    if(left!=i) set(left, t);
+                    left++;
+                }
             }
+            kept=left;
+            mDespawned.clear();
         }
+        boolean indexed=mIndexedModCount==modCount;
+        if(kept<size()) removeRange(kept, size());
+        mLiveCount=kept;
+        mCountedModCount=modCount;
+        if(mTypes==null) {
+            mIndexedModCount=modCount;
+        } else if(indexed) {
+            mTypes.flushRemoved();
+            mIndexedModCount=modCount;
+        } else {
+            mTypes.clear();
+        }
+        for (int i = 0; i < mSpawned.size(); i++) {
+            add(mSpawned.get(i));
+        }
+        mSpawned.clear();
+    }
+
+    /**
+     * Applies given action on each entity of given type.
+     * Only matching entities are visited.
+     * @param type type of entities to visit.
+     * @param action action to apply.
+     * @param <S> type of entities to visit.
+     */
+    public <S> void forEachOfType(Class<S> type, Consumer<? super S> action) {
+        types().forEach(type, action);
+    }
+
+    /**
+     * Counts entities of given type.
+     * @param type type of entities to count.
+     * @return number of entities that are instances of given type.
+     */
+    public int countOfType(Class<?> type) {
+        return types().count(type);
+    }
+
+    /**
+     * Returns type index, creates it on first use and drops its buckets if this list changed behind its back.
+     * @return type index of this manager.
+     */
+    private TypeIndex<T> types() {
+        if(mTypes==null) {
+            mTypes=new TypeIndex<T>(this::forEach);
+            mIndexedModCount=modCount;
+        } else if(mIndexedModCount!=modCount) {
+            mTypes.clear();
+            mIndexedModCount=modCount;
+        }
+        return mTypes;
+    }
+
+    /**
+     * Returns the number of alive entities.
+     * Entities killed since the last {@link #update()} are still counted until it removes them.
+     * @return number of alive entities as integer.
+     */
+    public int getLiveCount() {
+        if(mCountedModCount!=modCount) {
+            int live=0;
+            for (int i = 0; i < size(); i++) {
+                if(get(i).isGarbage()) live++;
+            }
+            mLiveCount=live;
+            mCountedModCount=modCount;
+        }
+        return mLiveCount;
     }
 
     /**
      * Says if entity is garbage, if yes it's manager has to wipe it from memory.
+     * Uses the count kept by {@link #getLiveCount()} instead of scanning all entities.
      *
      * @return return {@code true} if entity is garbage; {@code false} otherwise.
      */
     @Override
     public boolean isGarbage() {
-        boolean isGarbage=false;
-        for (int i = 0; i < size(); i++) {
-            isGarbage = isGarbage || get(i).isGarbage();
-        }
-        return isGarbage;
+        return getLiveCount()>0;
     }
 
     /**
@@ -104,7 +301,7 @@ public class DefaultEntityManager<T extends Entity> extends ArrayList<T> impleme
      * @param stepsY pixels to move each entity vertically.
      */
     public void moveUnsafely(int stepsX, int stepsY) {
-        for (int i = 0; i < size(); i++) { // avoid ConcurrentModificationException
+        for (int i = 0; i < size(); i++) {
             get(i).moveUnsafely(stepsX, stepsY);
         }
     }
@@ -117,7 +314,7 @@ public class DefaultEntityManager<T extends Entity> extends ArrayList<T> impleme
      * @param stepsY pixels to move entities vertically
      */
     public boolean moveSafely(int stepsX, int stepsY) {
-        for(int i=0; i<size(); i++) { // avoid ConcurrentModificationException
+        for(int i=0; i<size(); i++) {
             get(i).moveSafely(stepsX, stepsY);
         }
         return true;
@@ -0,0 +1,199 @@
+package com.engine.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records spawns, despawns and entity manager registrations while a tick is running,
+ * so they can be applied later at a defined sync point instead of changing
+ * collections that are being iterated.
+ * <p>Commands are applied in the order they were recorded by {@link #playback(Target)}.
+ * Recording and playback are synchronized, so commands can be recorded from any thread.</p>
+ * The buffer is reused, playback empties it without releasing its storage.
+ * @see com.engine.AbstractGame
+ */
+public final class EntityCommandBuffer {
+    /**
+     * Types of commands.
+     */
+    private enum Op {
+        SPAWN,
+        DESPAWN,
+        ADD_MANAGER,
+        REMOVE_MANAGER
+    }
+
+    /**
+     * Receives commands on playback.
+     */
+    public interface Target {
+        /**
+         * Adds entity with a handle reserved when the spawn was recorded.
+         * @param handle reserved handle.
+         * @param name name of entity, {@code null} if entity has no name.
+         * @param entity entity to add.
+         */
+        void spawn(int handle, String name, Entity entity);
+
+        /**
+         * Removes entity with given handle.
+         * @param handle handle of entity to remove.
+         */
+        void despawn(int handle);
+
+        /**
+         * Starts updating given entity manager.
+         * @param id manager id.
+         * @param manager entity manager.
+         */
+        void addManager(String id, EntityCollection<? extends Entity> manager);
+
+        /**
+         * Stops updating entity manager with given id.
+         * @param id manager id.
+         */
+        void removeManager(String id);
+    }
+
+    /**
+     * Recorded operations.
+     */
+    private final List<Op> mOps=new ArrayList<>();
+
+    /**
+     * Handle argument of each operation.
+     */
+    private int[] mHandles=new int[16];
+
+    /**
+     * Name or id argument of each operation.
+     */
+    private final List<String> mNames=new ArrayList<>();
+
+    /**
+     * Entity or manager argument of each operation.
+     */
+    private final List<Object> mObjects=new ArrayList<>();
+
+    /**
+     * Entity names reserved by recorded spawns.
+     * @see #isNamePending(String)
+     */
+    private final Set<String> mPendingNames=new HashSet<>();
+
+    /**
+     * Manager ids reserved by recorded registrations.
+     * @see #isManagerPending(String)
+     */
+    private final Set<String> mPendingManagers=new HashSet<>();
+
+    /**
+     * Records a spawn.
+     * @param handle handle reserved for the entity.
+     * @param name name of entity, {@code null} if entity has no name.
+     * @param entity entity to spawn.
+     */
+    public synchronized void spawn(int handle, String name, Entity entity) {
+        if(name!=null) mPendingNames.add(name);
+        record(Op.SPAWN, handle, name, entity);
+    }
+
+    /**
+     * Records a despawn.
+     * @param handle handle of entity to remove.
+     */
+    public synchronized void despawn(int handle) {
+        record(Op.DESPAWN, handle, null, null);
+    }
+
+    /**
+     * Records an entity manager registration.
+     * @param id manager id.
+     * @param manager entity manager.
+     */
+    public synchronized void addManager(String id, EntityCollection<? extends Entity> manager) {
+        mPendingManagers.add(id);
+        record(Op.ADD_MANAGER, EntityRegistry.INVALID_HANDLE, id, manager);
+    }
+
+    /**
+     * Records removal of an entity manager.
+     * @param id manager id.
+     */
+    public synchronized void removeManager(String id) {
+        record(Op.REMOVE_MANAGER, EntityRegistry.INVALID_HANDLE, id, null);
+    }
+
+    /**
+     * Checks if a recorded spawn uses given name.
+     * @param name name to check.
+     * @return {@code true} if name is reserved by a recorded spawn, {@code false} otherwise.
+     */
+    public synchronized boolean isNamePending(String name) {
+        return mPendingNames.contains(name);
+    }
+
+    /**
+     * Checks if a recorded registration uses given manager id.
+     * @param id id to check.
+     * @return {@code true} if id is reserved by a recorded registration, {@code false} otherwise.
+     */
+    public synchronized boolean isManagerPending(String id) {
+        return mPendingManagers.contains(id);
+    }
+
+    /**
+     * Returns if there are commands waiting for playback.
+     * @return {@code true} if no command is recorded, {@code false} otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return mOps.isEmpty();
+    }
+
+    /**
+     * Applies all recorded commands to given target in the order they were recorded
+     * and empties the buffer.
+     * Commands recorded by the target while playing back are applied in the same playback.
+     * The buffer is emptied even if a command throws, the commands after it are dropped.
+     * @param target target to apply commands to.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void playback(Target target) {
+        try {
+            for (int i = 0; i < mOps.size(); i++) {
+                switch (mOps.get(i)) {
+                    case SPAWN -> target.spawn(mHandles[i], mNames.get(i), (Entity) mObjects.get(i));
+                    case DESPAWN -> target.despawn(mHandles[i]);
+                    case ADD_MANAGER -> target.addManager(mNames.get(i), (EntityCollection<? extends Entity>) mObjects.get(i));
+                    case REMOVE_MANAGER -> target.removeManager(mNames.get(i));
+                }
+            }
+        } finally {
+            mOps.clear();
+            mNames.clear();
+            mObjects.clear();
+            mPendingNames.clear();
+            mPendingManagers.clear();
+        }
+    }
+
+    /**
+     * Appends a command.
+     * @param op type of command.
+     * @param handle handle argument.
+     * @param name name or id argument.
+     * @param object entity or manager argument.
+     */
+    private void record(Op op, int handle, String name, Object object) {
+        int index=mOps.size();
+        if(index==mHandles.length)
+            mHandles=Arrays.copyOf(mHandles, index*2);
+        mHandles[index]=handle;
+        mOps.add(op);
+        mNames.add(name);
+        mObjects.add(object);
+    }
+}
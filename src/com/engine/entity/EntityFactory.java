@@ -0,0 +1,195 @@
+package com.engine.entity;
+
+import com.engine.AbstractGame;
+import com.engine.Context;
+import com.engine.behavior.Renderable;
+import com.engine.map.Tile;
+
+import java.awt.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Registry of factories used to create entities and tiles by class.
+ * <p>Each class is resolved only once: its constructor is looked up and kept as a {@link MethodHandle},
+ * later instances are created without {@code Class.forName} or constructor lookups.
+ * Factories can also be registered as lambdas, e.g. {@code EntityFactory.register(Coin.class, Coin::new)},
+ * or as clonable prototypes with {@link #registerPrototype(AbstractEntity)}.</p>
+ * Used by {@link com.engine.ManifestManager} and {@link com.engine.map.Map#getTile}.
+ */
+public final class EntityFactory {
+    /**
+     * Factories of entities taking the game as only argument, by class name.
+     * @see #create(String, AbstractGame)
+     */
+    private static final Map<String, Function<AbstractGame, ? extends AbstractEntity>> smFactories=new ConcurrentHashMap<>();
+
+    /**
+     * Factories of tiles taking context and position, by class.
+     * @see #createTile(Class, Context, Point)
+     */
+    private static final Map<Class<?>, BiFunction<Context, Point, ? extends Tile>> smTileFactories=new ConcurrentHashMap<>();
+
+    private EntityFactory() {
+    }
+
+    /**
+     * Registers a factory for given entity class, used instead of its constructor.
+     * @param type class of created entities.
+     * @param factory function creating an entity for a game.
+     * @param <T> type of created entities.
+     */
+    public static <T extends AbstractEntity> void register(Class<T> type, Function<AbstractGame, ? extends T> factory) {
+        smFactories.put(type.getName(), factory);
+    }
+
+    /**
+     * Registers a tile factory for given tile class, used instead of its constructor.
+     * @param type class of created tiles.
+     * @param factory function creating a tile at a position.
+     * @param <T> type of created tiles.
+     */
+    public static <T extends Tile> void registerTile(Class<T> type, BiFunction<Context, Point, ? extends T> factory) {
+        smTileFactories.put(type, factory);
+    }
+
+    /**
+     * Registers given entity as prototype of its class.
+     * New entities of its class are created with {@link AbstractEntity#copy()},
+     * sharing its configuration and cached sprites and keeping its context.
+     * @param prototype entity to copy, must implement {@link Cloneable}.
+     * @throws IllegalArgumentException if prototype does not implement {@link Cloneable}.
+     */
+    public static void registerPrototype(AbstractEntity prototype) throws IllegalArgumentException {
+        if(!(prototype instanceof Cloneable))
+            throw new IllegalArgumentException("Prototype "+prototype+" must implement Cloneable.");
+        prototype.getDrawer(Renderable.Drawer.class); // keeps sprites cached for copies
+        smFactories.put(prototype.getClass().getName(), game -> prototype.copy());
+    }
+
+    /**
+     * Removes registered factory or prototype of given class.
+     * Next instance will be created by its constructor again.
+     * @param type class to remove factory of.
+     */
+    public static void unregister(Class<?> type) {
+        smFactories.remove(type.getName());
+        smTileFactories.remove(type);
+    }
+
+    /**
+     * Creates an entity of the class with given name.
+     * <p>Class <i>must</i> extend {@link AbstractEntity} <i>and</i> declare a public constructor taking ({@link AbstractGame}),
+     * unless a factory is registered for it.</p>
+     * @param className full name of class, e.g. {@code java.lang.String}.
+     * @param game game passed to the constructor.
+     * @return new entity.
+     * @throws ClassNotFoundException if class with given name cannot be found.
+     */
+    public static AbstractEntity create(String className, AbstractGame game) throws ClassNotFoundException {
+        Function<AbstractGame, ? extends AbstractEntity> factory=smFactories.get(className);
+        if(factory==null) {
+            factory=resolve(className);
+            Function<AbstractGame, ? extends AbstractEntity> previous=smFactories.putIfAbsent(className, factory);
+            if(previous!=null) factory=previous;
+        }
+        return factory.apply(game);
+    }
+
+    /**
+     * Creates a tile of given class at given position.
+     * <p>Class <i>must</i> declare a public constructor taking ({@link Context}, {@link Point}),
+     * unless a factory is registered for it.</p>
+     * @param tileClass class of tile.
+     * @param context context passed to the constructor.
+     * @param position position passed to the constructor.
+     * @param <T> type of tile.
+     * @return new tile.
+     * @throws NoSuchMethodException if the required constructor is not found.
+     * @throws InvocationTargetException if the constructor itself throws an exception.
+     * @throws InstantiationException if the tile class is abstract.
+     * @throws IllegalAccessException if the constructor is inaccessible.
+     */
+    public static <T extends Tile> T createTile(Class<T> tileClass, Context context, Point position)
+            throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
+        BiFunction<Context, Point, ? extends Tile> factory=smTileFactories.get(tileClass);
+        if(factory==null) {
+            factory=resolveTile(tileClass);
+            BiFunction<Context, Point, ? extends Tile> previous=smTileFactories.putIfAbsent(tileClass, factory);
+            if(previous!=null) factory=previous;
+        }
+        try {
+            return tileClass.cast(factory.apply(context, position));
+        } catch (ConstructorException e) {
+            throw new InvocationTargetException(e.getCause());
+        }
+    }
+
+    /**
+     * Looks up the class with given name and its constructor taking ({@link AbstractGame}).
+     * @param className full name of class.
+     * @return factory calling the constructor.
+     * @throws ClassNotFoundException if class with given name cannot be found.
+     */
+    private static Function<AbstractGame, AbstractEntity> resolve(String className) throws ClassNotFoundException {
+        Class<?> rawClass=Class.forName(className);
+        if(!AbstractEntity.class.isAssignableFrom(rawClass))
+            throw new IllegalArgumentException("Class "+className+" is not a subtype of AbstractEntity.");
+        final MethodHandle constructor;
+        try {
+            constructor=MethodHandles.publicLookup()
+                    .findConstructor(rawClass, MethodType.methodType(void.class, AbstractGame.class))
+                    .asType(MethodType.methodType(AbstractEntity.class, AbstractGame.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new RuntimeException("Subclass of AbstractEntity must declare a constructor taking args (AbstractGame)", e);
+        }
+        return game -> {
+            try {
+                return (AbstractEntity) constructor.invokeExact(game);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException("Failed to instantiate entity: "+className, t);
+            }
+        };
+    }
+
+    /**
+     * Looks up constructor of given tile class taking ({@link Context}, {@link Point}).
+     * @param tileClass class of tile.
+     * @return factory calling the constructor.
+     */
+    private static BiFunction<Context, Point, Tile> resolveTile(Class<? extends Tile> tileClass)
+            throws NoSuchMethodException, InstantiationException, IllegalAccessException {
+        if(Modifier.isAbstract(tileClass.getModifiers()))
+            throw new InstantiationException("Class "+tileClass.getName()+" is abstract.");
+        final MethodHandle constructor=MethodHandles.publicLookup()
+                .findConstructor(tileClass, MethodType.methodType(void.class, Context.class, Point.class))
+                .asType(MethodType.methodType(Tile.class, Context.class, Point.class));
+        return (context, position) -> {
+            try {
+                return (Tile) constructor.invokeExact(context, position);
+            } catch (Throwable t) {
+                throw new ConstructorException(t);
+            }
+        };
+    }
+
+    /**
+     * Carries an exception thrown by a tile constructor out of its factory.
+     */
+    private static final class ConstructorException extends RuntimeException {
+        private static final long serialVersionUID=1L;
+
+        private ConstructorException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
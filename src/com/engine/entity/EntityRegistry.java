@@ -0,0 +1,424 @@
+package com.engine.entity;
+
+import com.engine.data.TypeIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Holds entities in a dense array and hands out compact {@code int} handles to find them later.
+ * <p>A handle packs the index of a slot with the generation of that slot. When an entity is removed
+ * its slot is reused by the next added entity with a new generation, so old handles of removed
+ * entities are recognized as stale and never return the new entity.</p>
+ * <p>Entities can optionally be added with a name, names are kept in an index on the side
+ * and lookups by handle never touch it.</p>
+ * Iterating with {@link #forEach(Consumer)} or {@link #entityAt(int)} walks the dense array
+ * and allocates nothing.
+ * Type-filtered loops and counts use a {@link TypeIndex} and only visit matching entities.
+ * @see com.engine.AbstractGame#addEntity(Entity)
+ */
+public final class EntityRegistry {
+    /**
+     * Handle returned when no entity could be found.
+     */
+    public static final int INVALID_HANDLE = -1;
+
+    /**
+     * Number of bits of a handle used for the slot index, the rest is used for the generation.
+     */
+    private static final int INDEX_BITS = 20;
+
+    /**
+     * Mask taking the slot index out of a handle.
+     */
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+    /**
+     * Mask keeping generations positive and inside the handle.
+     */
+    private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+
+    /**
+     * Value of {@link #mSlotDense} for slots reserved but not committed yet.
+     * @see #reserve()
+     */
+    private static final int RESERVED = -2;
+
+    /**
+     * Alive entities, packed from index 0 to {@link #mSize}.
+     */
+    private Entity[] mDense = new Entity[64];
+
+    /**
+     * Slot of each entity in {@link #mDense}, same indexes.
+     */
+    private int[] mDenseSlots = new int[64];
+
+    /**
+     * Number of alive entities.
+     */
+    private int mSize;
+
+    /**
+     * Index in {@link #mDense} of the entity owning each slot, {@code -1} for free slots
+     * and {@link #RESERVED} for reserved slots.
+     */
+    private int[] mSlotDense = new int[64];
+
+    /**
+     * Current generation of each slot.
+     */
+    private int[] mSlotGenerations = new int[64];
+
+    /**
+     * Name of the entity owning each slot, {@code null} if entity has no name.
+     */
+    private String[] mSlotNames = new String[64];
+
+    /**
+     * Number of slots ever used.
+     */
+    private int mSlotCount;
+
+    /**
+     * Stack of free slots, reused before new slots are opened.
+     */
+    private int[] mFreeSlots = new int[16];
+
+    /**
+     * Number of free slots in {@link #mFreeSlots}.
+     */
+    private int mFreeCount;
+
+    /**
+     * Name index, maps names to handles.
+     * @see #getHandle(String)
+     */
+    private final Map<String, Integer> mNames = new HashMap<>();
+
+    /**
+     * Entities grouped by type.
+     * @see #forEach(Class, Consumer)
+     * @see #count(Class)
+     */
+    private final TypeIndex<Entity> mTypes = new TypeIndex<>(this::forEach);
+
+    /**
+     * Adds an entity without name.
+     * @param entity entity to add.
+     * @return handle of the added entity.
+     */
+    public int add(Entity entity) {
+        return add(null, entity);
+    }
+
+    /**
+     * Adds an entity with a name.
+     * @param name name of the entity, {@code null} to add entity without name.
+     * @param entity entity to add.
+     * @return handle of the added entity.
+     * @throws IllegalArgumentException if name is already in use.
+     */
+    public int add(String name, Entity entity) throws IllegalArgumentException {
+        return commit(reserve(), name, entity);
+    }
+
+    /**
+     * Reserves a handle for an entity that will be added later with {@link #commit(int, String, Entity)}.
+     * Until then, the handle finds no entity.
+     * @return reserved handle.
+     */
+    public int reserve() {
+        int slot;
+        if(mFreeCount>0) {
+            slot=mFreeSlots[--mFreeCount];
+        } else {
+            if(mSlotCount>INDEX_MASK)
+                throw new IllegalStateException("Registry is full, cannot hold more than "+(INDEX_MASK+1)+" entities.");
+            slot=mSlotCount++;
+            ensureSlotCapacity(mSlotCount);
+        }
+        mSlotDense[slot]=RESERVED;
+        return toHandle(slot);
+    }
+
+    /**
+     * Adds an entity with a handle taken from {@link #reserve()}.
+     * @param handle reserved handle.
+     * @param name name of the entity, {@code null} to add entity without name.
+     * @param entity entity to add.
+     * @return given handle.
+     * @throws IllegalArgumentException if name is already in use or handle is not reserved.
+     */
+    public int commit(int handle, String name, Entity entity) throws IllegalArgumentException {
+        if(entity==null) throw new NullPointerException("Entity cannot be null.");
+        int slot=handle&INDEX_MASK;
+        if(handle<0||slot>=mSlotCount||mSlotDense[slot]!=RESERVED||mSlotGenerations[slot]!=handle>>>INDEX_BITS)
+            throw new IllegalArgumentException("Handle "+handle+" is not reserved.");
+        if(name!=null&&mNames.containsKey(name)) {
+            freeSlot(slot);
+            throw new IllegalArgumentException("key "+name+" already added with value "+get(name));
+        }
+        if(mSize==mDense.length) {
+            mDense=Arrays.copyOf(mDense, mSize*2);
+            mDenseSlots=Arrays.copyOf(mDenseSlots, mSize*2);
+        }
+        mDense[mSize]=entity;
+        mDenseSlots[mSize]=slot;
+        mSlotDense[slot]=mSize;
+        mSlotNames[slot]=name;
+        mSize++;
+        if(name!=null) mNames.put(name, handle);
+        mTypes.add(entity);
+        return handle;
+    }
+
+    /**
+     * Removes entity with given handle.
+     * The last entity of the dense array takes the place of the removed one.
+     * @param handle handle of entity to remove.
+     * @return {@code true} if an entity got removed, {@code false} if handle is stale.
+     */
+    public boolean remove(int handle) {
+        if(isReserved(handle)) {
+            freeSlot(handle&INDEX_MASK); // reserved but never committed
+            return true;
+        }
+        int slot=slotOf(handle);
+        if(slot<0) return false;
+        int index=mSlotDense[slot];
+        mTypes.remove(mDense[index]);
+        int last=--mSize;
+        if(index!=last) {
+            mDense[index]=mDense[last];
+            mDenseSlots[index]=mDenseSlots[last];
+            mSlotDense[mDenseSlots[index]]=index;
+        }
+        mDense[last]=null;
+        freeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Removes all entities matching given filter with a single order-keeping sweep.
+     * @param filter returns {@code true} for entities to remove.
+     * @return number of removed entities.
+     */
+    public int removeIf(Predicate<? super Entity> filter) {
+        int kept=0;
+        final int size=mSize;
+        for (int i = 0; i < size; i++) {
+            Entity entity=mDense[i];
+            int slot=mDenseSlots[i];
+            if(filter.test(entity)) {
+                freeSlot(slot);
+                mTypes.markRemoved(entity);
+            } else {
+                if(kept!=i) {
+                    mDense[kept]=entity;
+                    mDenseSlots[kept]=slot;
+                    mSlotDense[slot]=kept;
+                }
+                kept++;
+            }
+        }
+        // entities added by the filter while sweeping
+        for (int i = size; i < mSize; i++, kept++) {
+            mDense[kept]=mDense[i];
+            mDenseSlots[kept]=mDenseSlots[i];
+            mSlotDense[mDenseSlots[kept]]=kept;
+        }
+        Arrays.fill(mDense, kept, mSize, null);
+        int removed=mSize-kept;
+        mSize=kept;
+        mTypes.flushRemoved();
+        return removed;
+    }
+
+    /**
+     * Returns entity with given handle.
+     * @param handle handle of entity.
+     * @return entity or {@code null} if handle is stale.
+     */
+    public Entity get(int handle) {
+        int slot=slotOf(handle);
+        return slot<0?null:mDense[mSlotDense[slot]];
+    }
+
+    /**
+     * Returns entity with given name.
+     * @param name name of entity.
+     * @return entity or {@code null} if no entity has this name.
+     */
+    public Entity get(String name) {
+        return get(getHandle(name));
+    }
+
+    /**
+     * Returns handle of entity with given name.
+     * @param name name of entity.
+     * @return handle or {@link #INVALID_HANDLE} if no entity has this name.
+     */
+    public int getHandle(String name) {
+        Integer handle=mNames.get(name);
+        return handle==null?INVALID_HANDLE:handle;
+    }
+
+    /**
+     * Returns name of entity with given handle.
+     * @param handle handle of entity.
+     * @return name or {@code null} if entity has no name or handle is stale.
+     */
+    public String getName(int handle) {
+        int slot=slotOf(handle);
+        return slot<0?null:mSlotNames[slot];
+    }
+
+    /**
+     * Checks if given handle still points to an entity.
+     * @param handle handle to check.
+     * @return {@code true} if handle is valid, {@code false} otherwise.
+     */
+    public boolean contains(int handle) {
+        return slotOf(handle)>=0;
+    }
+
+    /**
+     * Checks if given handle is reserved by {@link #reserve()} and not committed yet.
+     * @param handle handle to check.
+     * @return {@code true} if handle is reserved, {@code false} otherwise.
+     */
+    public boolean isReserved(int handle) {
+        int slot=handle&INDEX_MASK;
+        return handle>=0&&slot<mSlotCount&&mSlotDense[slot]==RESERVED&&mSlotGenerations[slot]==handle>>>INDEX_BITS;
+    }
+
+    /**
+     * Returns number of entities.
+     * @return number of entities as integer.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns entity at given position of the dense array.
+     * Use with {@link #size()} for allocation-free loops.
+     * @param index position in the dense array.
+     * @return entity at given position.
+     * @throws IndexOutOfBoundsException if index is negative or not less than {@link #size()}.
+     */
+    public Entity entityAt(int index) throws IndexOutOfBoundsException {
+        return mDense[Objects.checkIndex(index, mSize)];
+    }
+
+    /**
+     * Returns handle of entity at given position of the dense array.
+     * @param index position in the dense array.
+     * @return handle of entity at given position.
+     * @throws IndexOutOfBoundsException if index is negative or not less than {@link #size()}.
+     */
+    public int handleAt(int index) throws IndexOutOfBoundsException {
+        return toHandle(mDenseSlots[Objects.checkIndex(index, mSize)]);
+    }
+
+    /**
+     * Applies given action on each entity.
+     * Entities added by the action are also visited.
+     * @param action action to apply.
+     */
+    public void forEach(Consumer<? super Entity> action) {
+        for (int i = 0; i < mSize; i++) {
+            action.accept(mDense[i]);
+        }
+    }
+
+    /**
+     * Applies given action on each entity of given type.
+     * Only entities of given type are visited.
+     * @param type type of entities to visit.
+     * @param action action to apply.
+     * @param <T> type of entities to visit.
+     */
+    public <T> void forEach(Class<T> type, Consumer<? super T> action) {
+        mTypes.forEach(type, action);
+    }
+
+    /**
+     * Counts entities of given type.
+     * @param type type of entities to count.
+     * @return number of entities that are instances of given type.
+     */
+    public int count(Class<?> type) {
+        return mTypes.count(type);
+    }
+
+    /**
+     * Returns all entities that have a name.
+     * Map is a new copy, changing it does not change this registry.
+     * @return map of names and entities.
+     */
+    public Map<String, Entity> namedEntities() {
+        Map<String, Entity> out=new LinkedHashMap<>();
+        for (int i = 0; i < mSize; i++) {
+            String name=mSlotNames[mDenseSlots[i]];
+            if(name!=null) out.put(name, mDense[i]);
+        }
+        return out;
+    }
+
+    /**
+     * Returns slot of given handle.
+     * @param handle handle to decode.
+     * @return slot index or {@code -1} if handle is stale or invalid.
+     */
+    private int slotOf(int handle) {
+        if(handle<0) return -1;
+        int slot=handle&INDEX_MASK;
+        if(slot>=mSlotCount||mSlotDense[slot]<0||mSlotGenerations[slot]!=handle>>>INDEX_BITS)
+            return -1;
+        return slot;
+    }
+
+    /**
+     * Packs slot and its current generation to a handle.
+     * @param slot slot to pack.
+     * @return handle.
+     */
+    private int toHandle(int slot) {
+        return (mSlotGenerations[slot]<<INDEX_BITS)|slot;
+    }
+
+    /**
+     * Frees given slot, removes its name and bumps its generation.
+     * @param slot slot to free.
+     */
+    private void freeSlot(int slot) {
+        if(mSlotNames[slot]!=null) {
+            mNames.remove(mSlotNames[slot]);
+            mSlotNames[slot]=null;
+        }
+        mSlotDense[slot]=-1;
+        mSlotGenerations[slot]=(mSlotGenerations[slot]+1)&GENERATION_MASK;
+        if(mFreeCount==mFreeSlots.length)
+            mFreeSlots=Arrays.copyOf(mFreeSlots, mFreeCount*2);
+        mFreeSlots[mFreeCount++]=slot;
+    }
+
+    /**
+     * Grows slot arrays to hold given number of slots.
+     * @param capacity required number of slots.
+     */
+    private void ensureSlotCapacity(int capacity) {
+        if(capacity<=mSlotDense.length) return;
+        int newCapacity=mSlotDense.length*2;
+        mSlotDense=Arrays.copyOf(mSlotDense, newCapacity);
+        mSlotGenerations=Arrays.copyOf(mSlotGenerations, newCapacity);
+        mSlotNames=Arrays.copyOf(mSlotNames, newCapacity);
+    }
+}
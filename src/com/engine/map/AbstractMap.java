@@ -3,8 +3,11 @@ package com.engine.map;
 import com.engine.animation.Direction;
 import com.engine.behavior.Collidable;
 import com.engine.behavior.Movable;
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
 import com.engine.entity.DefaultEntityManager;
 import com.engine.AbstractGame;
+import com.engine.sprite.SpriteCache;
 import com.engine.view.DisplayableDrawer;
 
 import java.awt.*;
@@ -16,6 +19,11 @@ import java.util.List;
  * Manages the map.
  */
 public abstract class AbstractMap extends DefaultEntityManager<Tile> implements HorizontalMap {
+    /**
+     * Layer drawing static tiles from cached chunk images, null while disabled.
+     * @see #setChunkLayerEnabled(boolean)
+     */
+    private TileChunkLayer mChunkLayer;
 
     /**
      * Context constructor.
@@ -26,12 +34,75 @@ public abstract class AbstractMap extends DefaultEntityManager<Tile> implements
         context.getDisplay(DisplayableDrawer.class).addEntitiesToDraw(toArray(new Tile[0]));
     }
 
+    /**
+     * Enables or disables drawing static tiles from cached chunk images.
+     * When enabled, tiles of this map that are not animated are moved from the screen to a {@link TileChunkLayer},
+     * tiles that start rendering later are added to it too.
+     * When disabled, tiles get their own drawers on screen back.
+     * @param enabled {@code true} to draw tiles from chunks, {@code false} to draw each tile by its drawer.
+     * @throws UnsupportedOperationException if display does not support layer drawers, tiles keep their drawers then.
+     */
+    public void setChunkLayerEnabled(boolean enabled) throws UnsupportedOperationException {
+        DisplayableDrawer display=context.getDisplay(DisplayableDrawer.class);
+        if(enabled&&mChunkLayer==null) {
+            TileChunkLayer chunkLayer=new TileChunkLayer(context);
+            display.addLayer(RenderLayer.TILES, chunkLayer);
+            for (int i = 0; i < size(); i++) {
+                Tile tile=get(i);
+                if(chunkLayer.add(tile))
+                    display.removeRenderable(tile);
+            }
+            mChunkLayer=chunkLayer;
+        } else if(!enabled&&mChunkLayer!=null) {
+            for (Renderable tile : mChunkLayer.getTiles()) {
+                mChunkLayer.remove(tile);
+                display.addEntitiesToDraw(tile);
+            }
+            display.removeLayer(mChunkLayer);
+            mChunkLayer=null;
+        }
+    }
+
+    /**
+     * Returns the chunk layer of this map.
+     * @return chunk layer, null if disabled.
+     * @see #setChunkLayerEnabled(boolean)
+     */
+    public TileChunkLayer getChunkLayer() {
+        return mChunkLayer;
+    }
+
+    /**
+     * Adds given tile to the chunk layer if it's enabled.
+     * @param tile tile that starts rendering.
+     * @return {@code true} if tile is drawn by the chunk layer, {@code false} if it needs its own drawer on screen.
+     * @see AbstractTile#startRendering()
+     */
+    boolean addToChunkLayer(Tile tile) {
+        return mChunkLayer!=null&&mChunkLayer.add(tile);
+    }
+
+    /**
+     * Moves all tiles unsafely.
+     * Chunk layer follows the map without drawing its chunks again.
+     * @param stepsX pixels to move each tile horizontally.
+     * @param stepsY pixels to move each tile vertically.
+     */
+    @Override
+    public void moveUnsafely(int stepsX, int stepsY) {
+        if(mChunkLayer!=null) mChunkLayer.translate(stepsX, stepsY);
+        super.moveUnsafely(stepsX, stepsY);
+    }
+
     /**
      * Initializes tiles.
      * Method can be called outside of class.
+     * Sprites loaded so far are packed into atlas pages after tiles are created.
+     * @see SpriteCache#packAtlas()
      */
     public void createTerrain(Path path) {
         createTerrain(this, path);
+        SpriteCache.getShared().packAtlas();
     }
 
     /**
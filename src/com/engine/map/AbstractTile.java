@@ -4,6 +4,7 @@ import com.engine.AbstractGame;
 import com.engine.Context;
 import com.engine.animation.Direction;
 import com.engine.entity.AbstractEntity;
+import com.engine.entity.Entity;
 
 import java.awt.*;
 
@@ -29,6 +30,18 @@ public abstract class AbstractTile extends AbstractEntity implements Tile {
         super(context);
     }
 
+    /**
+     * Adds tile to the chunk layer of the map if it's enabled,
+     * otherwise adds its drawer to main game screen.
+     * @see AbstractMap#setChunkLayerEnabled(boolean)
+     */
+    @Override
+    public Entity startRendering() {
+        if(context.getMap(Map.class) instanceof AbstractMap map && map.addToChunkLayer(this))
+            return this;
+        return super.startRendering();
+    }
+
     /**
      * Final implementation of method.
      * @return current direction.
@@ -37,4 +50,13 @@ public abstract class AbstractTile extends AbstractEntity implements Tile {
     protected final Direction currentDirection() {
         return Direction.NONE;
     }
+
+    /**
+     * Drawer of tiles that only draw their sprite.
+     * It's recorded as a sprite command, so while rendering in parallel strips an opaque tile
+     * that is not squeezed is copied straight into the framebuffer by {@link com.engine.sprite.RasterBlitter}.
+     * Return it from {@link #createDrawer()} for plain tiles.
+     */
+    public class TileDrawer extends AbstractDrawer {
+    }
 }
@@ -3,9 +3,10 @@ package com.engine.map;
 import com.engine.Context;
 import com.engine.behavior.Collidable;
 import com.engine.entity.EntityCollection;
+import com.engine.entity.EntityFactory;
+import com.engine.view.Camera;
 
 import java.awt.*;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -19,9 +20,11 @@ public interface Map extends EntityCollection<Tile> {
      * <p>
      * The specified tile class must have a public constructor with the signature:
      * {@code (AbstractGame context, Point position)}.
+     * The constructor is looked up once per class by {@link EntityFactory},
+     * a factory registered there is used instead.
      * </p>
      *
-     * @param cords the raw screen coordinates where the tile is to be placed
+     * @param cords the raw screen coordinates where the tile is to be placed, converted to the world by the camera
      * @param tileSize the size of the tile grid block
      * @param tileClass the class of the tile to instantiate; must extend {@code AbstractTile}
      *
@@ -32,15 +35,16 @@ public interface Map extends EntityCollection<Tile> {
      */
     static <T extends Tile> T getTile(Context context, Map map, Point cords, Dimension tileSize, Class<T> tileClass)
             throws InvocationTargetException, InstantiationException, IllegalAccessException, NoSuchMethodException {
+        Camera camera=context.getCamera();
+        Point world=camera==null?cords:camera.toWorld(cords);
         // check if block already exists
-        if(getBlockAt(map, cords).isPresent()) return null;
-        Constructor<? extends Tile> tileConstructor=tileClass.getConstructor(Context.class, Point.class);
-        Point position=getBlockPosition(map, cords, tileSize);
-        Tile tile=tileConstructor.newInstance(context, position);
+        if(getBlockAt(map, world).isPresent()) return null;
+        Point position=getBlockPosition(map, world, tileSize);
+        T tile=EntityFactory.createTile(tileClass, context, position);
         tile.moveUnsafely(0, 0); // update rect
         map.add(tile);
         tile.startRendering();
-        return tileClass.cast(tile);
+        return tile;
     }
 
     /**
@@ -60,13 +64,27 @@ public interface Map extends EntityCollection<Tile> {
     }
 
     /**
-     * Calculates the top-left position of the tile block that contains the given screen coordinates.
+     * Calculates the top-left position of the tile block shown at the given screen coordinates.
+     * Screen coordinates are converted to the world by the camera first, so it works while scrolled or zoomed.
+     *
+     * @param camera the camera showing the map
+     * @param cords the coordinates in screen space
+     * @param tileSize the size of a single tile
+     * @return a {@link Point} representing the world-space position (top-left corner) of the tile block
+     * @see Camera#toWorld(Point)
+     */
+    static Point getBlockPosition(Map map, Camera camera, Point cords, Dimension tileSize) {
+        return getBlockPosition(map, camera.toWorld(cords), tileSize);
+    }
+
+    /**
+     * Calculates the top-left position of the tile block that contains the given world coordinates.
      * <p>
-     * This method maps the screen coordinates ({@code x}, {@code y}) to the corresponding tile-aligned
+     * This method maps the coordinates ({@code x}, {@code y}) to the corresponding tile-aligned
      * world position based on the current map offset and tile size.
      * </p>
      *
-     * @param cords the coordinates in screen space
+     * @param cords the coordinates in world space, the same as screen space without a camera
      * @param tileSize the size of a single tile
      * @return a {@link Point} representing the world-space position (top-left corner) of the tile block
      */
@@ -74,8 +92,8 @@ public interface Map extends EntityCollection<Tile> {
         Point worldPos = map.getPosition();
 
         // My logic simplified by ChatGPT
-        int blockY = ((cords.y - worldPos.y) / tileSize.height) * tileSize.height + worldPos.y;
-        int blockX = ((cords.x - worldPos.x) / tileSize.width) * tileSize.width + worldPos.x;
+        int blockY = Math.floorDiv(cords.y - worldPos.y, tileSize.height) * tileSize.height + worldPos.y;
+        int blockX = Math.floorDiv(cords.x - worldPos.x, tileSize.width) * tileSize.width + worldPos.x;
 
         return new Point(blockX, blockY);
     }
@@ -1,6 +1,15 @@
 package com.engine.map;
 
+import com.engine.behavior.RenderLayer;
 import com.engine.entity.Entity;
 
 public interface Tile extends Entity {
+    /**
+     * Tiles are drawn behind entities.
+     * @return {@link RenderLayer#TILES}.
+     */
+    @Override
+    default RenderLayer getRenderLayer() {
+        return RenderLayer.TILES;
+    }
 }
@@ -0,0 +1,422 @@
+package com.engine.map;
+
+import com.engine.Context;
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
+import com.engine.entity.AbstractEntity;
+import com.engine.sprite.CompatibleImages;
+import com.engine.view.Camera;
+import com.engine.view.DisplayableDrawer;
+import com.engine.view.RenderCommandBuffer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Layer that draws static tiles of a map from cached chunk images.
+ * <p>The map is divided in square chunks of {@value #CHUNK_SIZE} pixels. Tiles of a chunk are drawn
+ * into its image once, and drawn again only when a tile of the chunk is added, removed, moves,
+ * resizes or changes sprite. Each frame only the images of visible chunks are drawn.</p>
+ * <p>Chunks are placed relative to the map origin, which follows {@link AbstractMap#moveUnsafely(int, int)},
+ * so scrolling the map does not invalidate them.
+ * Animated tiles are not accepted, they keep their own drawers.</p>
+ * <p>The layer records an image command per visible chunk, so changed chunks are drawn and hidden images dropped
+ * once per frame by the game thread, and strips rendered in parallel only draw the chunks they intersect.</p>
+ * <p>When the camera zooms out to half or less, chunks are drawn from mip levels of their images,
+ * each halving the previous one, so far zoomed out views do not scale down every chunk image each frame.</p>
+ * @see AbstractMap#setChunkLayerEnabled(boolean)
+ */
+public final class TileChunkLayer implements Renderable.Drawer, Renderable.Tracker {
+    /**
+     * Width and height of a chunk as pixels.
+     */
+    public static final int CHUNK_SIZE=512;
+
+    /**
+     * Maximum number of chunk images kept for chunks that are not visible.
+     */
+    private static final int MAX_HIDDEN_IMAGES=32;
+
+    /**
+     * Context used to get the size of the display.
+     */
+    private final Context mContext;
+
+    /**
+     * Chunks by key.
+     * @see #key(int, int)
+     */
+    private final java.util.Map<Long, Chunk> mChunks=new HashMap<>();
+
+    /**
+     * Bounds of each tile relative to map origin, when it was last placed in chunks.
+     */
+    private final java.util.Map<Renderable, Rectangle> mBounds=new IdentityHashMap<>();
+
+    /**
+     * Position of map origin on screen.
+     */
+    private int mOriginX, mOriginY;
+
+    /**
+     * Number of chunks having an image.
+     */
+    private int mImageCount;
+
+    /**
+     * Number of frames drawn, used to find chunks that were not visible lately.
+     */
+    private long mFrame;
+
+    /**
+     * Chunks shown by the camera in the current frame, reused every frame.
+     * @see #prepareFrame()
+     */
+    private final List<Chunk> mVisible=new ArrayList<>();
+
+    /**
+     * Mip level visible chunks are drawn from in the current frame, 0 for the chunk images themselves.
+     * @see #prepareFrame()
+     */
+    private int mLevel;
+
+    /**
+     * Context constructor.
+     * @param context game context.
+     */
+    TileChunkLayer(Context context) {
+        mContext=context;
+    }
+
+    /**
+     * Adds a tile to the layer, unless it's animated.
+     * @param tile tile to add.
+     * @return {@code true} if tile is drawn by this layer, {@code false} if it must be drawn by its own drawer.
+     */
+    public synchronized boolean add(Renderable tile) {
+        if(mBounds.containsKey(tile))
+            return true;
+        if(isAnimated(tile))
+            return false;
+        Rectangle bounds=localBounds(tile);
+        mBounds.put(tile, bounds);
+        forEachChunk(bounds, true, chunk -> {
+            chunk.mTiles.add(tile);
+            invalidate(chunk);
+        });
+        tile.setTracker(this);
+        return true;
+    }
+
+    /**
+     * Removes a tile from the layer.
+     * @param tile tile to remove.
+     * @return {@code true} if tile was drawn by this layer, {@code false} otherwise.
+     */
+    public synchronized boolean remove(Renderable tile) {
+        Rectangle bounds=mBounds.remove(tile);
+        if(bounds==null)
+            return false;
+        if(tile.getTracker()==this)
+            tile.setTracker(null);
+        forEachChunk(bounds, false, chunk -> {
+            chunk.mTiles.remove(tile);
+            invalidate(chunk);
+        });
+        return true;
+    }
+
+    /**
+     * Returns all tiles drawn by this layer.
+     * @return copy of the tiles.
+     */
+    public synchronized List<Renderable> getTiles() {
+        return new ArrayList<>(mBounds.keySet());
+    }
+
+    /**
+     * Moves the map origin, called before all tiles of the map move by the same steps.
+     * @param stepsX pixels map moves horizontally.
+     * @param stepsY pixels map moves vertically.
+     */
+    synchronized void translate(int stepsX, int stepsY) {
+        mOriginX+=stepsX;
+        mOriginY+=stepsY;
+        if(stepsX!=0||stepsY!=0)
+            mContext.getDisplay(DisplayableDrawer.class).invalidate(null);
+    }
+
+    /**
+     * Draws all chunks again on the next frame, e.g. after debug drawing is toggled.
+     */
+    public synchronized void invalidate() {
+        for (Chunk chunk : mChunks.values()) {
+            invalidate(chunk);
+        }
+    }
+
+    /**
+     * Places tile in chunks again if it moved relative to the map origin or resized.
+     * @param renderable changed tile.
+     */
+    @Override
+    public synchronized void boundsChanged(Renderable renderable) {
+        Rectangle old=mBounds.get(renderable);
+        if(old==null||(old.x==renderable.getWorldX()-mOriginX&&old.y==renderable.getWorldY()-mOriginY
+                &&old.width==renderable.getWidth()&&old.height==renderable.getHeight()))
+            return;
+        Rectangle bounds=localBounds(renderable);
+        forEachChunk(old, false, chunk -> {
+            chunk.mTiles.remove(renderable);
+            invalidate(chunk);
+        });
+        mBounds.put(renderable, bounds);
+        forEachChunk(bounds, true, chunk -> {
+            chunk.mTiles.add(renderable);
+            invalidate(chunk);
+        });
+    }
+
+    /**
+     * Draws chunks of the tile again, or gives the tile back to the display if it became animated.
+     * @param renderable changed tile.
+     */
+    @Override
+    public synchronized void spriteChanged(Renderable renderable) {
+        Rectangle bounds=mBounds.get(renderable);
+        if(bounds==null)
+            return;
+        if(isAnimated(renderable)) {
+            remove(renderable);
+            mContext.getDisplay(DisplayableDrawer.class).addEntitiesToDraw(renderable);
+            return;
+        }
+        forEachChunk(bounds, false, this::invalidate);
+    }
+
+    /**
+     * Removes killed tile.
+     * @param renderable removed tile.
+     */
+    @Override
+    public void removed(Renderable renderable) {
+        remove(renderable);
+    }
+
+    /**
+     * Draws images of visible chunks, only the ones intersecting the clip of the graphics.
+     * Used when the layer is not recorded, see {@link #record(RenderCommandBuffer, RenderLayer)}.
+     * @param graphics graphics to draw chunks, at world coordinates.
+     */
+    @Override
+    public synchronized void drawAll(Graphics2D graphics) {
+        prepareFrame();
+        Rectangle clip=graphics.getClipBounds();
+        for (int i = 0; i < mVisible.size(); i++) {
+            Chunk chunk=mVisible.get(i);
+            int x=chunk.mX*CHUNK_SIZE+mOriginX, y=chunk.mY*CHUNK_SIZE+mOriginY;
+            if(clip==null||clip.intersects(x, y, CHUNK_SIZE, CHUNK_SIZE))
+                graphics.drawImage(imageOf(chunk), x, y, CHUNK_SIZE, CHUNK_SIZE, null);
+        }
+    }
+
+    /**
+     * Records an image command for each visible chunk, called by the game thread once per frame.
+     * @param buffer buffer to record commands to.
+     * @param layer layer to draw in.
+     * @return {@code true}, drawing is always recorded.
+     */
+    @Override
+    public synchronized boolean record(RenderCommandBuffer buffer, RenderLayer layer) {
+        prepareFrame();
+        for (int i = 0; i < mVisible.size(); i++) {
+            Chunk chunk=mVisible.get(i);
+            buffer.drawImage(imageOf(chunk), chunk.mX*CHUNK_SIZE+mOriginX, chunk.mY*CHUNK_SIZE+mOriginY, CHUNK_SIZE, CHUNK_SIZE, layer);
+        }
+        return true;
+    }
+
+    /**
+     * Starts a frame: collects chunks the camera shows into {@link #mVisible}, picks the mip level from the zoom,
+     * draws tiles of changed ones into their images and drops images of chunks hidden for a while.
+     */
+    private void prepareFrame() {
+        mFrame++;
+        mVisible.clear();
+        Dimension screen=mContext.getDisplay(DisplayableDrawer.class).dimension();
+        Camera camera=mContext.getCamera();
+        Rectangle view=new Rectangle(0, 0, screen.width, screen.height);
+        mLevel=0;
+        if(camera!=null) {
+            view=camera.toWorld(view);
+            double zoom=camera.getZoom();
+            if(zoom<=0.5)
+                mLevel=Math.min((int) Math.floor(-Math.log(zoom)/Math.log(2)), Integer.numberOfTrailingZeros(CHUNK_SIZE));
+        }
+        int firstX=Math.floorDiv(view.x-mOriginX, CHUNK_SIZE), lastX=Math.floorDiv(view.x+view.width-1-mOriginX, CHUNK_SIZE);
+        int firstY=Math.floorDiv(view.y-mOriginY, CHUNK_SIZE), lastY=Math.floorDiv(view.y+view.height-1-mOriginY, CHUNK_SIZE);
+        for (int cy = firstY; cy <= lastY; cy++) {
+            for (int cx = firstX; cx <= lastX; cx++) {
+                Chunk chunk=mChunks.get(key(cx, cy));
+                if(chunk==null||chunk.mTiles.isEmpty())
+                    continue;
+                chunk.mLastFrame=mFrame;
+                if(chunk.mDirty||chunk.mImage==null)
+                    renderChunk(chunk);
+                mVisible.add(chunk);
+            }
+        }
+        if(mImageCount>MAX_HIDDEN_IMAGES)
+            dropHiddenImages();
+    }
+
+    /**
+     * Returns the image of given chunk at the mip level of the current frame, creating missing levels.
+     * Each level is scaled down from the previous one, to the next half of its size.
+     * @param chunk visible chunk, having an image.
+     * @return chunk image or its mip level.
+     */
+    private BufferedImage imageOf(Chunk chunk) {
+        if(mLevel==0)
+            return chunk.mImage;
+        if(chunk.mMips==null||chunk.mMips.length<mLevel) {
+            int from=chunk.mMips==null?0:chunk.mMips.length;
+            chunk.mMips=chunk.mMips==null?new BufferedImage[mLevel]:Arrays.copyOf(chunk.mMips, mLevel);
+            for (int i = from; i < mLevel; i++) {
+                BufferedImage previous=i==0?chunk.mImage:chunk.mMips[i-1];
+                chunk.mMips[i]=CompatibleImages.scale(previous, CHUNK_SIZE>>(i+1), CHUNK_SIZE>>(i+1));
+            }
+        }
+        return chunk.mMips[mLevel-1];
+    }
+
+    /**
+     * Marks chunk to be drawn again and its area of the screen to be repainted.
+     * @param chunk changed chunk.
+     */
+    private void invalidate(Chunk chunk) {
+        chunk.mDirty=true;
+        mContext.getDisplay(DisplayableDrawer.class).invalidate(
+                new Rectangle(chunk.mX*CHUNK_SIZE+mOriginX, chunk.mY*CHUNK_SIZE+mOriginY, CHUNK_SIZE, CHUNK_SIZE));
+    }
+
+    /**
+     * Draws tiles of given chunk into a new image, its mip levels are created again when used.
+     * The old image is not drawn over, recorded frames still being replayed keep drawing it.
+     * @param chunk chunk to draw.
+     */
+    private void renderChunk(Chunk chunk) {
+        if(chunk.mImage==null)
+            mImageCount++;
+        chunk.mImage=CompatibleImages.create(CHUNK_SIZE, CHUNK_SIZE);
+        chunk.mMips=null;
+        Graphics2D graphics=chunk.mImage.createGraphics();
+        // tiles draw at their screen position
+        graphics.translate(-(chunk.mX*CHUNK_SIZE+mOriginX), -(chunk.mY*CHUNK_SIZE+mOriginY));
+        for (int i = 0; i < chunk.mTiles.size(); i++) {
+            Renderable.Drawer drawer=chunk.mTiles.get(i).getDrawer(Renderable.Drawer.class);
+            if(drawer instanceof AbstractEntity.AbstractDrawer abstractDrawer)
+                abstractDrawer.render(graphics);
+            else if(drawer!=null)
+                drawer.drawAll(graphics);
+        }
+        graphics.dispose();
+        chunk.mDirty=false;
+    }
+
+    /**
+     * Drops images and mip levels of chunks not drawn in the last frame, least recently drawn first,
+     * until at most {@link #MAX_HIDDEN_IMAGES} images are hidden.
+     */
+    private void dropHiddenImages() {
+        List<Chunk> hidden=new ArrayList<>();
+        for (Chunk chunk : mChunks.values()) {
+            if(chunk.mImage!=null&&chunk.mLastFrame!=mFrame)
+                hidden.add(chunk);
+        }
+        hidden.sort((a, b) -> Long.compare(a.mLastFrame, b.mLastFrame));
+        for (int i = 0; i < hidden.size()-MAX_HIDDEN_IMAGES; i++) {
+            hidden.get(i).mImage=null;
+            hidden.get(i).mMips=null;
+            mImageCount--;
+        }
+    }
+
+    /**
+     * Applies action on each chunk intersecting given bounds.
+     * @param bounds bounds relative to map origin.
+     * @param create {@code true} to create missing chunks, {@code false} to skip them.
+     * @param action action to apply.
+     */
+    private void forEachChunk(Rectangle bounds, boolean create, java.util.function.Consumer<Chunk> action) {
+        int lastX=Math.floorDiv(bounds.x+Math.max(bounds.width, 1)-1, CHUNK_SIZE);
+        int lastY=Math.floorDiv(bounds.y+Math.max(bounds.height, 1)-1, CHUNK_SIZE);
+        for (int cy = Math.floorDiv(bounds.y, CHUNK_SIZE); cy <= lastY; cy++) {
+            for (int cx = Math.floorDiv(bounds.x, CHUNK_SIZE); cx <= lastX; cx++) {
+                long key=key(cx, cy);
+                Chunk chunk=mChunks.get(key);
+                if(chunk==null) {
+                    if(!create) continue;
+                    chunk=new Chunk(cx, cy);
+                    mChunks.put(key, chunk);
+                }
+                action.accept(chunk);
+                if(chunk.mTiles.isEmpty()) { // drop empty chunk
+                    if(chunk.mImage!=null) mImageCount--;
+                    mChunks.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns bounds of given tile relative to map origin.
+     * @param tile tile.
+     * @return new rectangle.
+     */
+    private Rectangle localBounds(Renderable tile) {
+        return new Rectangle(tile.getWorldX()-mOriginX, tile.getWorldY()-mOriginY, tile.getWidth(), tile.getHeight());
+    }
+
+    /**
+     * Checks if drawer of given tile changes sprites while drawing.
+     * @param tile tile to check.
+     * @return {@code true} if tile must be drawn every frame, {@code false} otherwise.
+     */
+    private static boolean isAnimated(Renderable tile) {
+        Renderable.Drawer drawer=tile.getDrawer(Renderable.Drawer.class);
+        return !(drawer instanceof AbstractEntity.AbstractDrawer abstractDrawer)||drawer.isAnimated()||abstractDrawer.hasSpriteAnimation();
+    }
+
+    /**
+     * Packs chunk coordinates into a key.
+     * @param cx chunk column.
+     * @param cy chunk row.
+     * @return key of the chunk.
+     */
+    private static long key(int cx, int cy) {
+        return ((long) cx<<32)|(cy&0xffffffffL);
+    }
+
+    /**
+     * Square part of the map and the tiles intersecting it.
+     */
+    private static final class Chunk {
+        private final int mX, mY;
+        private final List<Renderable> mTiles=new ArrayList<>();
+        private BufferedImage mImage;
+        private BufferedImage[] mMips;
+        private boolean mDirty=true;
+        private long mLastFrame;
+
+        private Chunk(int x, int y) {
+            mX=x;
+            mY=y;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.engine.sprite;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Creates images in the pixel format of the default screen,
+ * so drawing them is a plain copy that can be accelerated.
+ * Falls back to {@link BufferedImage#TYPE_INT_ARGB} when there is no screen.
+ */
+public final class CompatibleImages {
+    /**
+     * Configuration of the default screen, null if environment is headless.
+     */
+    private static final GraphicsConfiguration smConfiguration=GraphicsEnvironment.isHeadless()?null:
+            GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+    private CompatibleImages() {
+    }
+
+    /**
+     * Creates an empty translucent image compatible with the screen.
+     * @param width width of the image.
+     * @param height height of the image.
+     * @return new image.
+     */
+    public static BufferedImage create(int width, int height) {
+        if(smConfiguration==null)
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        return smConfiguration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Returns given image in the pixel format of the screen.
+     * @param image image to convert.
+     * @return given image if it's already compatible, a converted copy otherwise.
+     */
+    public static BufferedImage toCompatible(BufferedImage image) {
+        if(smConfiguration!=null&&image.getColorModel().equals(smConfiguration.getColorModel(Transparency.TRANSLUCENT)))
+            return image;
+        return scale(image, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Draws given image scaled into a new compatible image, with bilinear filtering and quality rendering,
+     * as the screen draws scaled images at the best quality tier.
+     * @param image image to scale.
+     * @param width width of the new image.
+     * @param height height of the new image.
+     * @return new image.
+     */
+    public static BufferedImage scale(Image image, int width, int height) {
+        BufferedImage scaled=create(width, height);
+        Graphics2D graphics=scaled.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+}
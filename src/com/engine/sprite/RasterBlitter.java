@@ -0,0 +1,77 @@
+package com.engine.sprite;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Copies opaque sprites into int packed images row by row, without going through {@link Graphics2D}.
+ * <p>An opaque sprite drawn at its own size, without a transform, is a plain copy of pixel rows,
+ * which costs far less than {@link Graphics2D#drawImage} with quality hints when Java2D uses software loops.</p>
+ * Accessing the pixels of the target makes it an unmanaged image, Java2D will not cache it in video memory,
+ * so only use it on software framebuffers that change every frame anyway.
+ * <p>The render pipeline copies sprite commands recorded by drawers, e.g. tiles, when it knows the image it draws into:
+ * the framebuffer of parallel strips and offscreen frames. Drawers called while replaying draw through the graphics.</p>
+ */
+public final class RasterBlitter {
+    /**
+     * Not instantiable.
+     */
+    private RasterBlitter() {
+    }
+
+    /**
+     * Checks if sprites can be blitted into given image.
+     * @param target image to check.
+     * @return {@code true} if image stores pixels as packed ints, {@code false} otherwise.
+     */
+    public static boolean supports(BufferedImage target) {
+        int type=target.getType();
+        return (type==BufferedImage.TYPE_INT_ARGB||type==BufferedImage.TYPE_INT_ARGB_PRE||type==BufferedImage.TYPE_INT_RGB)
+                &&target.getRaster().getDataBuffer() instanceof DataBufferInt
+                &&target.getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * Copies an opaque sprite at its own size into given image, clipped to the image and given clip.
+     * Opaque pixels are the same in all supported formats, so rows are copied as they are.
+     * @param sprite sprite to copy.
+     * @param target image to copy to, must be {@link #supports(BufferedImage) supported}.
+     * @param x x of the sprite in the image.
+     * @param y y of the sprite in the image.
+     * @param clip area to draw in, null for the whole image.
+     * @return {@code true} if sprite was copied, {@code false} if it is not opaque and must be drawn instead.
+     */
+    public static boolean blit(Sprite sprite, BufferedImage target, int x, int y, Rectangle clip) {
+        int[] pixels=sprite.getOpaquePixels();
+        if(pixels==null)
+            return false;
+        int width=sprite.getWidth(), height=sprite.getHeight();
+        if(pixels.length!=width*height) // sprite was packed again since pixels were read
+            return false;
+        int left=Math.max(x, 0), top=Math.max(y, 0);
+        int right=Math.min(x+width, target.getWidth()), bottom=Math.min(y+height, target.getHeight());
+        if(clip!=null) {
+            left=Math.max(left, clip.x);
+            top=Math.max(top, clip.y);
+            right=Math.min(right, clip.x+clip.width);
+            bottom=Math.min(bottom, clip.y+clip.height);
+        }
+        if(left>=right||top>=bottom)
+            return true;
+        WritableRaster raster=target.getRaster();
+        DataBufferInt buffer=(DataBufferInt) raster.getDataBuffer();
+        SinglePixelPackedSampleModel model=(SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data=buffer.getData();
+        int stride=model.getScanlineStride();
+        int offset=buffer.getOffset()+model.getOffset(left-raster.getSampleModelTranslateX(), top-raster.getSampleModelTranslateY());
+        int length=right-left;
+        for (int row = top; row < bottom; row++) {
+            System.arraycopy(pixels, (row-y)*width+left-x, data, offset, length);
+            offset+=stride;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,230 @@
+package com.engine.sprite;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Reference to a sprite, either a standalone image or a region of a {@link SpriteAtlas} page.
+ * <p>Drawers keep the same sprite instance while the cache packs sprites into atlases or moves them,
+ * the region it points to is swapped atomically.</p>
+ * Sprites drawn at a size other than their own are scaled once per size into a
+ * {@link CompatibleImages compatible} image, so every draw is an unscaled copy.
+ * @see SpriteCache
+ */
+public final class Sprite {
+    /**
+     * Current region of the sprite.
+     */
+    private volatile Region mRegion;
+
+    /**
+     * Maximum number of scaled variants kept per sprite.
+     * Enough for animations resizing entities step by step, e.g. {@link com.engine.animation.SqueezeAnimation}.
+     */
+    private static final int MAX_VARIANTS=16;
+
+    /**
+     * Scaled variants of the sprite by size, least recently used first.
+     * Guards itself.
+     * @see #getScaled(int, int)
+     */
+    private final java.util.Map<Long, BufferedImage> mVariants=new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(java.util.Map.Entry<Long, BufferedImage> eldest) {
+            return size()>MAX_VARIANTS;
+        }
+    };
+
+    /**
+     * Standalone image constructor.
+     * @param image decoded image of the sprite.
+     */
+    Sprite(BufferedImage image) {
+        mRegion=new Region(image, 0, 0, image.getWidth(), image.getHeight(), image);
+    }
+
+    /**
+     * Draws the sprite scaled to given bounds.
+     * At its own size, only the region of the sprite is copied from its source image,
+     * at any other size the scaled variant of that size is copied.
+     * @see #getScaled(int, int)
+     * @param graphics graphics to draw the sprite to.
+     * @param x x coordinate of top left corner.
+     * @param y y coordinate of top left corner.
+     * @param width width to draw the sprite with.
+     * @param height height to draw the sprite with.
+     */
+    public void draw(Graphics2D graphics, int x, int y, int width, int height) {
+        if(width<=0||height<=0)
+            return;
+        Region region=mRegion;
+        if(width==region.mWidth&&height==region.mHeight)
+            graphics.drawImage(region.mSource, x, y, x+width, y+height,
+                    region.mX, region.mY, region.mX+region.mWidth, region.mY+region.mHeight, null);
+        else
+            graphics.drawImage(getScaled(width, height), x, y, null);
+    }
+
+    /**
+     * Returns the sprite scaled to given size, scales it on first request.
+     * @param width width of the variant.
+     * @param height height of the variant.
+     * @return compatible image of given size.
+     */
+    public BufferedImage getScaled(int width, int height) {
+        Long key=((long) width<<32)|(height&0xffffffffL);
+        synchronized (mVariants) {
+            BufferedImage variant=mVariants.get(key);
+            if(variant==null) {
+                variant=CompatibleImages.scale(getImage(), width, height);
+                mVariants.put(key, variant);
+            }
+            return variant;
+        }
+    }
+
+    /**
+     * Returns the sprite as an image of its own.
+     * If sprite is packed, the image shares its pixels with the atlas page.
+     * @return image of the sprite.
+     */
+    public BufferedImage getImage() {
+        return mRegion.mImage;
+    }
+
+    /**
+     * Returns the image the sprite is drawn from, the atlas page if sprite is packed.
+     * @return source image.
+     */
+    public BufferedImage getSource() {
+        return mRegion.mSource;
+    }
+
+    /**
+     * Returns width of the sprite.
+     * @return width as pixels.
+     */
+    public int getWidth() {
+        return mRegion.mWidth;
+    }
+
+    /**
+     * Returns height of the sprite.
+     * @return height as pixels.
+     */
+    public int getHeight() {
+        return mRegion.mHeight;
+    }
+
+    /**
+     * Returns if every pixel of the sprite is fully opaque, checked once per region.
+     * @return {@code true} if sprite has no transparent pixels, {@code false} otherwise.
+     */
+    public boolean isOpaque() {
+        return getOpaquePixels()!=null;
+    }
+
+    /**
+     * Returns pixels of an opaque sprite, copied once per region, used to blit it without {@link Graphics2D}.
+     * @return pixels as ARGB row by row, null if sprite has transparent pixels.
+     * @see RasterBlitter
+     */
+    int[] getOpaquePixels() {
+        Region region=mRegion;
+        if(!region.mOpaqueChecked) {
+            int[] pixels=region.mImage.getRGB(0, 0, region.mWidth, region.mHeight, null, 0, region.mWidth);
+            boolean opaque=true;
+            for (int i = 0; i < pixels.length&&opaque; i++) {
+                opaque=(pixels[i]>>>24)==0xff;
+            }
+            region.mOpaquePixels=opaque?pixels:null;
+            region.mOpaqueChecked=true;
+        }
+        return region.mOpaquePixels;
+    }
+
+    /**
+     * Returns the variant of the sprite to draw when it's shown smaller than half its size, e.g. in zoomed out views.
+     * Each mip level halves the size of the previous one, levels are created on first use and kept per region,
+     * so drawing a far zoomed out sprite does not scale down all of its pixels every frame.
+     * @param scale size on screen relative to the size of the sprite.
+     * @return smallest mip level still at least as large as shown, null if the sprite itself should be drawn.
+     */
+    public BufferedImage getMipmap(double scale) {
+        if(!(scale>0)||scale>0.5)
+            return null;
+        Region region=mRegion;
+        int level=(int) Math.floor(-Math.log(scale)/Math.log(2));
+        while (level>0&&(region.mWidth>>level==0||region.mHeight>>level==0))
+            level--;
+        if(level==0)
+            return null;
+        BufferedImage[] mips=region.mMips;
+        if(mips==null||mips.length<level) {
+            synchronized (region) {
+                mips=region.mMips;
+                int from=mips==null?0:mips.length;
+                if(from<level) {
+                    mips=mips==null?new BufferedImage[level]:Arrays.copyOf(mips, level);
+                    for (int i = from; i < level; i++) {
+                        BufferedImage previous=i==0?region.mImage:mips[i-1];
+                        mips[i]=halve(previous, region.mWidth>>(i+1), region.mHeight>>(i+1));
+                    }
+                    region.mMips=mips;
+                }
+            }
+        }
+        return mips[level-1];
+    }
+
+    /**
+     * Scales given image down to the size of the next mip level, averaging pixels.
+     * @param image image of the previous level.
+     * @param width width of the next level.
+     * @param height height of the next level.
+     * @return new compatible image.
+     */
+    private static BufferedImage halve(BufferedImage image, int width, int height) {
+        BufferedImage half=CompatibleImages.create(width, height);
+        Graphics2D graphics=half.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return half;
+    }
+
+    /**
+     * Points the sprite to a region of an atlas page.
+     * @param page atlas page.
+     * @param x x coordinate of the region in the page.
+     * @param y y coordinate of the region in the page.
+     */
+    void bind(BufferedImage page, int x, int y) {
+        int width=getWidth(), height=getHeight();
+        mRegion=new Region(page, x, y, width, height, page.getSubimage(x, y, width, height));
+    }
+
+    /**
+     * Source image and bounds of a sprite.
+     */
+    private static final class Region {
+        private final BufferedImage mSource;
+        private final int mX, mY, mWidth, mHeight;
+        private final BufferedImage mImage;
+        private volatile int[] mOpaquePixels;
+        private volatile boolean mOpaqueChecked;
+        private volatile BufferedImage[] mMips;
+
+        private Region(BufferedImage source, int x, int y, int width, int height, BufferedImage image) {
+            mSource=source;
+            mX=x;
+            mY=y;
+            mWidth=width;
+            mHeight=height;
+            mImage=image;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.engine.sprite;
+
+import java.util.Arrays;
+
+/**
+ * Advances all sprite animations in one pass per tick, from the game clock.
+ * <p>Each animation is a {@link Clip} with its own frame duration. On {@link #advance(long)}
+ * the frame of every registered clip is computed from the time passed since the clip started,
+ * so drawers only read the precomputed frame while drawing. The clock is the game time,
+ * so animations freeze while the game is paused.
+ * A clip can be given a listener called when its frame changes, so drawers report a change a few times a second
+ * instead of being drawn every frame.</p>
+ * Clips are kept in an array, each clip keeps its slot so it's unregistered in constant time.
+ * @see #getShared()
+ */
+public final class SpriteAnimator {
+    /**
+     * Animator advanced by the game loop.
+     */
+    private static final SpriteAnimator smShared=new SpriteAnimator();
+
+    /**
+     * Registered clips, the first {@link #mSize} slots are used.
+     */
+    private Clip[] mClips=new Clip[64];
+
+    /**
+     * Number of registered clips.
+     */
+    private int mSize;
+
+    /**
+     * Clips whose frame changed on the current advance, reused every advance.
+     */
+    private Clip[] mChanged=new Clip[64];
+
+    /**
+     * Game time of the last advance.
+     */
+    private long mNow;
+
+    /**
+     * Returns the animator advanced by the game loop.
+     * @return shared animator.
+     */
+    public static SpriteAnimator getShared() {
+        return smShared;
+    }
+
+    /**
+     * Starts advancing given clip, from the current frame of the animator.
+     * Does nothing if clip is already registered.
+     * @param clip clip to register.
+     * @throws IllegalArgumentException if clip is registered in another animator.
+     */
+    public synchronized void register(Clip clip) throws IllegalArgumentException {
+        if(clip.mAnimator==this)
+            return;
+        if(clip.mAnimator!=null)
+            throw new IllegalArgumentException("Clip is registered in another animator");
+        if(mSize==mClips.length)
+            mClips=Arrays.copyOf(mClips, mSize*2);
+        clip.mAnimator=this;
+        clip.mIndex=mSize;
+        clip.mStart_millis=mNow;
+        clip.mFrame=0;
+        mClips[mSize++]=clip;
+    }
+
+    /**
+     * Stops advancing given clip, it keeps its last frame.
+     * @param clip clip to unregister.
+     * @return {@code true} if clip was registered, {@code false} otherwise.
+     */
+    public synchronized boolean unregister(Clip clip) {
+        if(clip.mAnimator!=this)
+            return false;
+        Clip last=mClips[--mSize]; // swap with last, order does not matter
+        mClips[clip.mIndex]=last;
+        last.mIndex=clip.mIndex;
+        mClips[mSize]=null;
+        clip.mAnimator=null;
+        clip.mIndex=-1;
+        return true;
+    }
+
+    /**
+     * Computes the frame of every registered clip at given game time, called once per tick by the game loop.
+     * Listeners of clips whose frame changed are called afterwards, outside the lock of the animator.
+     * @param gameTimeMillis current game time.
+     */
+    public void advance(long gameTimeMillis) {
+        int changed=0;
+        Clip[] clips;
+        synchronized (this) {
+            mNow=gameTimeMillis;
+            if(mChanged.length<mSize)
+                mChanged=new Clip[mClips.length];
+            clips=mChanged;
+            for (int i = 0; i < mSize; i++) {
+                Clip clip=mClips[i];
+                int frame=(int) ((Math.max(0, gameTimeMillis-clip.mStart_millis)/clip.mFrameDuration_millis)&Integer.MAX_VALUE);
+                if(frame!=clip.mFrame) {
+                    clip.mFrame=frame;
+                    if(clip.mListener!=null) clips[changed++]=clip;
+                }
+            }
+        }
+        for (int i = 0; i < changed; i++) {
+            clips[i].mListener.run();
+            clips[i]=null;
+        }
+    }
+
+    /**
+     * Returns number of registered clips.
+     * @return number of clips.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Frame counter of an animation.
+     * The frame counts up, readers take it modulo the number of their sprites,
+     * so one clip serves sprite sets of different lengths, e.g. one per direction.
+     */
+    public static final class Clip {
+        /**
+         * Animator advancing this clip, null while not registered.
+         */
+        private SpriteAnimator mAnimator;
+
+        /**
+         * Slot of this clip in its animator.
+         */
+        private int mIndex=-1;
+
+        /**
+         * Game time the clip started.
+         */
+        private long mStart_millis;
+
+        /**
+         * Time each frame is shown.
+         */
+        private volatile long mFrameDuration_millis;
+
+        /**
+         * Frame computed on the last advance.
+         */
+        private volatile int mFrame;
+
+        /**
+         * Called by the game loop when the frame changes, null for none.
+         */
+        private final Runnable mListener;
+
+        /**
+         * Frame duration constructor.
+         * @param frameDurationMillis time each frame is shown.
+         * @throws IllegalArgumentException if duration is not positive.
+         */
+        public Clip(long frameDurationMillis) throws IllegalArgumentException {
+            this(frameDurationMillis, null);
+        }
+
+        /**
+         * Frame duration and listener constructor.
+         * @param frameDurationMillis time each frame is shown.
+         * @param listener called after an advance changed the frame, null for none.
+         * @throws IllegalArgumentException if duration is not positive.
+         */
+        public Clip(long frameDurationMillis, Runnable listener) throws IllegalArgumentException {
+            setFrameDuration(frameDurationMillis);
+            mListener=listener;
+        }
+
+        /**
+         * Sets time each frame is shown, applied on the next advance.
+         * @param millis time as milliseconds.
+         * @throws IllegalArgumentException if duration is not positive.
+         */
+        public void setFrameDuration(long millis) throws IllegalArgumentException {
+            if(millis<=0)
+                throw new IllegalArgumentException("Frame duration must be positive: "+millis);
+            mFrameDuration_millis=millis;
+        }
+
+        /**
+         * Returns the frame computed on the last advance.
+         * @return frame counter, never negative.
+         */
+        public int getFrame() {
+            return mFrame;
+        }
+
+        /**
+         * Returns if this clip is advanced by an animator.
+         * @return {@code true} if registered, {@code false} otherwise.
+         */
+        public boolean isRegistered() {
+            return mAnimator!=null;
+        }
+    }
+}
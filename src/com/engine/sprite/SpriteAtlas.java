@@ -0,0 +1,143 @@
+package com.engine.sprite;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs sprites into a few large images, the atlas pages.
+ * <p>Sprites are sorted by height and placed in rows (shelves), a new page is started when a page is full.
+ * Each page is only as big as the area its sprites cover, so a last page holding a few sprites stays small.
+ * Sprites bigger than a page stay standalone.
+ * Drawing many sprites of the same page avoids switching source surfaces on every {@code drawImage}.</p>
+ * @see SpriteCache#packAtlas()
+ */
+public final class SpriteAtlas {
+    /**
+     * Default width and height of a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE=2048;
+
+    /**
+     * Empty pixels around each sprite, so scaled sprites do not bleed into their neighbours.
+     */
+    private static final int PADDING=1;
+
+    /**
+     * Width and height of a page.
+     */
+    private final int mPageSize;
+
+    /**
+     * Pages of this atlas.
+     */
+    private final List<BufferedImage> mPages=new ArrayList<>();
+
+    /**
+     * Page size constructor.
+     * @param pageSize width and height of a page.
+     * @throws IllegalArgumentException if page size is not positive.
+     */
+    public SpriteAtlas(int pageSize) throws IllegalArgumentException {
+        if(pageSize<=0)
+            throw new IllegalArgumentException("Page size must be positive: "+pageSize);
+        mPageSize=pageSize;
+    }
+
+    /**
+     * Packs given sprites into new pages and binds each sprite to its region.
+     * @param sprites sprites to pack.
+     * @return number of sprites packed, sprites bigger than a page are skipped.
+     */
+    public int pack(Collection<Sprite> sprites) {
+        List<Sprite> sorted=new ArrayList<>(sprites.size());
+        for (Sprite sprite : sprites) {
+            if(sprite.getWidth()+PADDING*2<=mPageSize&&sprite.getHeight()+PADDING*2<=mPageSize)
+                sorted.add(sprite);
+        }
+        sorted.sort(Comparator.comparingInt(Sprite::getHeight).reversed());
+
+        // place sprites first, so each page can be created at the size its sprites need
+        final int count=sorted.size();
+        int[] pageIndices=new int[count], xs=new int[count], ys=new int[count];
+        List<Dimension> extents=new ArrayList<>();
+        int x=0, y=0, shelfHeight=0;
+        for (int i = 0; i < count; i++) {
+            Sprite sprite=sorted.get(i);
+            int width=sprite.getWidth()+PADDING*2, height=sprite.getHeight()+PADDING*2;
+            if(!extents.isEmpty()&&x+width>mPageSize) { // next shelf
+                x=0;
+                y+=shelfHeight;
+                shelfHeight=0;
+            }
+            if(extents.isEmpty()||y+height>mPageSize) { // next page
+                extents.add(new Dimension());
+                x=0;
+                y=0;
+                shelfHeight=0;
+            }
+            Dimension extent=extents.get(extents.size()-1);
+            pageIndices[i]=extents.size()-1;
+            xs[i]=x+PADDING;
+            ys[i]=y+PADDING;
+            x+=width;
+            shelfHeight=Math.max(shelfHeight, height);
+            extent.width=Math.max(extent.width, x);
+            extent.height=Math.max(extent.height, y+height);
+        }
+
+        int first=mPages.size();
+        for (int pageIndex = 0; pageIndex < extents.size(); pageIndex++) {
+            Dimension extent=extents.get(pageIndex);
+            mPages.add(CompatibleImages.create(extent.width, extent.height));
+        }
+        BufferedImage page=null;
+        Graphics2D graphics=null;
+        for (int i = 0; i < count; i++) {
+            if(page!=mPages.get(first+pageIndices[i])) {
+                if(graphics!=null) graphics.dispose();
+                page=mPages.get(first+pageIndices[i]);
+                graphics=page.createGraphics();
+                graphics.setComposite(AlphaComposite.Src);
+            }
+            Sprite sprite=sorted.get(i);
+            graphics.drawImage(sprite.getImage(), xs[i], ys[i], null);
+            sprite.bind(page, xs[i], ys[i]);
+        }
+        if(graphics!=null) graphics.dispose();
+        System.out.println("[DEBUG] Packed "+sorted.size()+" sprites into "+mPages.size()+" atlas pages.");
+        return sorted.size();
+    }
+
+    /**
+     * Returns number of pages.
+     * @return number of pages of this atlas.
+     */
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * Checks if given sprite is drawn from a page of this atlas.
+     * @param sprite sprite to check.
+     * @return {@code true} if sprite is bound to one of the pages, {@code false} otherwise.
+     */
+    public boolean contains(Sprite sprite) {
+        return mPages.contains(sprite.getSource());
+    }
+
+    /**
+     * Returns estimated memory of the pages.
+     * @return memory of all pages as bytes.
+     */
+    public long getSize() {
+        long size=0;
+        for (BufferedImage page : mPages) {
+            size+=(long) page.getWidth()*page.getHeight()*4;
+        }
+        return size;
+    }
+}
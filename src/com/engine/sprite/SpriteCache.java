@@ -0,0 +1,244 @@
+package com.engine.sprite;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache of decoded sprites shared by all drawers, keyed by resource URL.
+ * <p>Each image is decoded once and converted to the pixel format of the screen. Drawers {@link #acquire(URL)} the sprites they use and
+ * {@link #release(URL)} them when they no longer need them. Sprites in use are never evicted.
+ * Released sprites stay in the cache, least recently used first in line for eviction,
+ * until the memory of all cached sprites exceeds the budget.</p>
+ * <p>Sprites of a level can be packed into a {@link SpriteAtlas} with {@link #packAtlas()},
+ * drawers keep their {@link Sprite} references which then point to regions of the atlas pages.
+ * Pages count in the budget instead of the sprites packed into them, until all these sprites are evicted.</p>
+ * Methods are synchronized, sprites can be acquired from any thread.
+ * @see #getShared()
+ */
+public final class SpriteCache {
+    /**
+     * Default memory budget, 64 MiB.
+     * @see #setBudget(long)
+     */
+    public static final long DEFAULT_BUDGET_BYTES=64L*1024*1024;
+
+    /**
+     * Cache shared by all drawers.
+     */
+    private static final SpriteCache smShared=new SpriteCache(DEFAULT_BUDGET_BYTES);
+
+    /**
+     * All cached sprites by key.
+     */
+    private final Map<String, Entry> mEntries=new HashMap<>();
+
+    /**
+     * Released sprites, least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> mUnused=new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of cached sprites packed into each atlas.
+     */
+    private final Map<SpriteAtlas, Integer> mAtlases=new HashMap<>();
+
+    /**
+     * Maximum memory of cached sprites as bytes, before released sprites get evicted.
+     */
+    private long mBudget_bytes;
+
+    /**
+     * Estimated memory of all cached sprites as bytes.
+     */
+    private long mUsage_bytes;
+
+    /**
+     * Budget constructor.
+     * @param budgetBytes maximum memory of cached sprites as bytes.
+     */
+    public SpriteCache(long budgetBytes) {
+        setBudget(budgetBytes);
+    }
+
+    /**
+     * Returns the cache shared by all drawers.
+     * @return shared cache.
+     */
+    public static SpriteCache getShared() {
+        return smShared;
+    }
+
+    /**
+     * Returns the sprite of given resource, decodes it if it's not cached.
+     * Each call must be followed by a {@link #release(URL)} when the sprite is no longer used.
+     * @param resource url of the image.
+     * @return decoded sprite.
+     * @throws IOException when ImageIO.read() fails.
+     * @throws NullPointerException if resource is null.
+     */
+    public synchronized Sprite acquire(URL resource) throws IOException {
+        String key=Objects.requireNonNull(resource, "Sprite resource not found.").toExternalForm();
+        Entry entry=mEntries.get(key);
+        if(entry==null) {
+            BufferedImage image=ImageIO.read(resource);
+            if(image==null)
+                throw new IOException("Cannot decode sprite "+key);
+            entry=new Entry(CompatibleImages.toCompatible(image));
+            mEntries.put(key, entry);
+            mUsage_bytes+=entry.mSize_bytes;
+        } else if(entry.mReferences==0) {
+            mUnused.remove(key);
+        }
+        entry.mReferences++;
+        evict();
+        return entry.mSprite;
+    }
+
+    /**
+     * Releases a sprite acquired by {@link #acquire(URL)}.
+     * Sprite stays cached until it's evicted.
+     * @param resource url of the image.
+     */
+    public synchronized void release(URL resource) {
+        String key=resource.toExternalForm();
+        Entry entry=mEntries.get(key);
+        if(entry==null||entry.mReferences==0)
+            return;
+        if(--entry.mReferences==0) {
+            mUnused.put(key, entry);
+            evict();
+        }
+    }
+
+    /**
+     * Sets the memory budget and evicts released sprites that do not fit anymore.
+     * @param budgetBytes maximum memory of cached sprites as bytes.
+     * @throws IllegalArgumentException if budget is negative.
+     */
+    public synchronized void setBudget(long budgetBytes) throws IllegalArgumentException {
+        if(budgetBytes<0)
+            throw new IllegalArgumentException("Budget cannot be negative: "+budgetBytes);
+        mBudget_bytes=budgetBytes;
+        evict();
+    }
+
+    /**
+     * Returns the memory budget.
+     * @return maximum memory of cached sprites as bytes.
+     */
+    public synchronized long getBudget() {
+        return mBudget_bytes;
+    }
+
+    /**
+     * Returns estimated memory of cached sprites and atlas pages.
+     * @return memory of cached sprites and atlas pages as bytes.
+     */
+    public synchronized long getUsage() {
+        return mUsage_bytes;
+    }
+
+    /**
+     * Returns number of cached sprites.
+     * @return number of cached sprites, in use or not.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Packs all sprites in use into new atlas pages of default size.
+     * Called when a level is loaded, sprites acquired later stay standalone until the next pack.
+     * The pages are charged to the budget, the packed sprites no longer are.
+     * @return number of sprites packed.
+     * @see SpriteAtlas
+     */
+    public synchronized int packAtlas() {
+        List<Entry> entries=new ArrayList<>(mEntries.size());
+        List<Sprite> sprites=new ArrayList<>(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            if(entry.mReferences>0) {
+                entries.add(entry);
+                sprites.add(entry.mSprite);
+            }
+        }
+        SpriteAtlas atlas=new SpriteAtlas(SpriteAtlas.DEFAULT_PAGE_SIZE);
+        int packed=atlas.pack(sprites);
+        if(packed==0)
+            return 0;
+        for (Entry entry : entries) {
+            if(atlas.contains(entry.mSprite)) {
+                uncharge(entry);
+                entry.mAtlas=atlas;
+                mAtlases.merge(atlas, 1, Integer::sum);
+            }
+        }
+        mUsage_bytes+=atlas.getSize();
+        evict();
+        return packed;
+    }
+
+    /**
+     * Drops all released sprites.
+     */
+    public synchronized void trim() {
+        for (String key : mUnused.keySet()) {
+            uncharge(mEntries.remove(key));
+        }
+        mUnused.clear();
+    }
+
+    /**
+     * Evicts least recently used released sprites until cache fits its budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator=mUnused.entrySet().iterator();
+        while (mUsage_bytes>mBudget_bytes&&iterator.hasNext()) {
+            Map.Entry<String, Entry> unused=iterator.next();
+            iterator.remove();
+            mEntries.remove(unused.getKey());
+            uncharge(unused.getValue());
+        }
+    }
+
+    /**
+     * Stops counting memory of given sprite, or of its atlas pages when it was the last cached sprite packed into them.
+     * @param entry entry leaving the cache or packed into a new atlas.
+     */
+    private void uncharge(Entry entry) {
+        SpriteAtlas atlas=entry.mAtlas;
+        if(atlas==null) {
+            mUsage_bytes-=entry.mSize_bytes;
+            return;
+        }
+        entry.mAtlas=null;
+        if(mAtlases.merge(atlas, -1, Integer::sum)==0) {
+            mAtlases.remove(atlas);
+            mUsage_bytes-=atlas.getSize();
+        }
+    }
+
+    /**
+     * Cached sprite with its reference count.
+     */
+    private static final class Entry {
+        private final Sprite mSprite;
+        private final long mSize_bytes;
+        private int mReferences;
+        private SpriteAtlas mAtlas;
+
+        private Entry(BufferedImage image) {
+            mSprite=new Sprite(image);
+            mSize_bytes=(long) image.getWidth()*image.getHeight()*4;
+        }
+    }
+}
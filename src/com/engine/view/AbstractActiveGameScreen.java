@@ -0,0 +1,287 @@
+package com.engine.view;
+
+import com.engine.Context;
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Game screen that renders actively on a {@link Canvas}.
+ * <p>Unlike {@link AbstractGameScreen}, frames are not painted through Swing's repaint manager:
+ * {@link #renderEverything()} draws directly into a {@link BufferStrategy} from the game thread
+ * and shows the frame by page flipping, or by blitting an accelerated back buffer
+ * ({@link java.awt.image.VolatileImage}) when flipping is not available.</p>
+ * Drawers and {@link #drawOnTopLayer(Graphics2D)} are fed the same way as in {@link AbstractGameScreen},
+ * so both screens can be returned by {@link com.engine.AbstractGame#createGameScreen()}.
+ * @see RenderPipeline
+ */
+@SuppressWarnings("unused")
+public abstract class AbstractActiveGameScreen extends Canvas implements DisplayableDrawer {
+    /**
+     * Number of buffers of the strategy, one front and one back buffer.
+     */
+    private static final int BUFFERS=2;
+
+    /**
+     * Holds all {@link Renderable.Drawer}s and feeds them.
+     * @see RenderPipeline
+     */
+    private final RenderPipeline mPipeline;
+
+    /**
+     * Context is used to access everything inside the app easily.
+     * @see Context
+     */
+    protected final Context context;
+
+    /**
+     * Screen's frame.
+     * @see #getFrame()
+     */
+    private final JFrame mFrame;
+
+    /**
+     * Screen's size.
+     * @see #dimension()
+     */
+    public final Dimension screenSize;
+
+    /**
+     * Buffer strategy of the canvas, created on the first frame the canvas is displayable.
+     * @see #getStrategy()
+     */
+    private BufferStrategy mStrategy;
+
+    /**
+     * Creates a new screen with a context.
+     * Launches a frame and sets the size.
+     * @param context context.
+     * @param initialTitle screen name.
+     */
+    protected AbstractActiveGameScreen(Context context, String initialTitle) {
+        this.context=context;
+        setName(initialTitle);
+        URL uri=getBackgroundUri();
+        mPipeline=new RenderPipeline(uri==null?null:new ImageIcon(uri).getImage());
+        mPipeline.setCamera(context==null?null:context.getCamera());
+        screenSize=dimension();
+        setSize(screenSize);
+        setPreferredSize(screenSize);
+        setBackground(Color.BLACK);
+        // frames are rendered by renderEverything() only
+        setIgnoreRepaint(true);
+        mFrame=startOnFrame();
+        mFrame.setIgnoreRepaint(true);
+    }
+
+    /**
+     * Draws things in the top layer of the graphics.
+     * @param graphics graphics of the back buffer to draw things on.
+     */
+    protected abstract void drawOnTopLayer(Graphics2D graphics);
+
+    /**
+     * Method used to get a url to the background image of the screen.
+     * @return url to background image, null for no background image.
+     */
+    protected abstract URL getBackgroundUri();
+
+    /**
+     * Method that creates a new {@link JFrame} and adds this canvas to it.
+     * Sets container's name as the window title.
+     * @return the frame.
+     */
+    protected abstract JFrame startOnFrame();
+
+    /**
+     * Renders everything in the back buffer and shows it.
+     * This is the sync point of the screen, drawers added or removed since the last frame are applied first.
+     * Frame is drawn again if the contents of the buffers were restored or lost while drawing.
+     * Does nothing while the canvas is not displayable.
+     */
+    @Override
+    public void renderEverything() {
+        mPipeline.sync(getWidth(), getHeight());
+        BufferStrategy strategy=getStrategy();
+        if(strategy==null)
+            return;
+        do {
+            do {
+                Graphics2D graphics=(Graphics2D) strategy.getDrawGraphics();
+                try {
+                    graphics.setColor(getBackground());
+                    graphics.fillRect(0, 0, getWidth(), getHeight());
+                    mPipeline.render(graphics, getWidth(), getHeight());
+                    drawOnTopLayer(graphics);
+                } finally {
+                    graphics.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Returns the buffer strategy, creates it if canvas became displayable.
+     * {@link Canvas#createBufferStrategy(int)} tries page flipping first,
+     * then accelerated and at last unaccelerated blitting.
+     * @return buffer strategy, null if canvas is not displayable yet.
+     */
+    private BufferStrategy getStrategy() {
+        if(mStrategy==null) {
+            if(!isDisplayable())
+                return null;
+            createBufferStrategy(BUFFERS);
+            mStrategy=getBufferStrategy();
+            System.out.println("[DEBUG] Buffer strategy "+mStrategy.getClass().getSimpleName()+
+                    " page flipping: "+mStrategy.getCapabilities().isPageFlipping());
+        }
+        return mStrategy;
+    }
+
+    /**
+     * Ignores system paint requests, frames are rendered by {@link #renderEverything()}.
+     * @param g the graphics context.
+     */
+    @Override
+    public void paint(Graphics g) {
+    }
+
+    /**
+     * Ignores system paint requests, frames are rendered by {@link #renderEverything()}.
+     * @param g the graphics context.
+     */
+    @Override
+    public void update(Graphics g) {
+    }
+
+    /**
+     * Returns the pipeline drawing this screen, used to tune rendering,
+     * e.g. {@link RenderPipeline#setParallelStrips(int)} or {@link RenderPipeline#setRenderScale(double)}.
+     * @return render pipeline of this screen.
+     */
+    @Override
+    public RenderPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Adds Entity's drawer to the drawers of this screen.
+     * Drawers are added on the next sync point.
+     * @see RenderPipeline#add(Renderable...)
+     * @param entities entities to include in drawing process.
+     */
+    @Override
+    public void addEntitiesToDraw(Renderable... entities) {
+        mPipeline.add(entities);
+    }
+
+    /**
+     * Removes a given entity's drawer from screen.
+     * Drawer is removed on the next sync point.
+     * @see RenderPipeline#remove(Renderable)
+     * @param entity entity to remove its drawer.
+     */
+    @Override
+    public void removeRenderable(Renderable entity) {
+        mPipeline.remove(entity);
+    }
+
+    /**
+     * Adds a drawer that does not belong to an entity, e.g. a tile layer,
+     * drawn before the entity drawers of given layer.
+     * Drawer is added on the next sync point.
+     * @see RenderPipeline#addLayer(RenderLayer, Renderable.Drawer)
+     * @param layer layer to draw in.
+     * @param drawer drawer to add.
+     */
+    @Override
+    public void addLayer(RenderLayer layer, Renderable.Drawer drawer) {
+        mPipeline.addLayer(layer, drawer);
+    }
+
+    /**
+     * Removes given layer drawer from screen.
+     * Drawer is removed on the next sync point.
+     * @see RenderPipeline#removeLayer(Renderable.Drawer)
+     * @param drawer drawer to remove.
+     */
+    @Override
+    public void removeLayer(Renderable.Drawer drawer) {
+        mPipeline.removeLayer(drawer);
+    }
+
+    /**
+     * Marks the next frame changed for on-demand rendering, active rendering always draws full frames
+     * because the contents of a flipped back buffer are undefined.
+     * @param area changed area.
+     * @see #takeChanges()
+     */
+    @Override
+    public void invalidate(Rectangle area) {
+        mPipeline.invalidate(area);
+    }
+
+    /**
+     * Returns if anything drawn changed since the last call.
+     * Anything drawn by {@link #drawOnTopLayer(Graphics2D)} that changes must be reported with {@link #invalidate(Rectangle)}.
+     * @return {@code true} if the next frame should be rendered, {@code false} otherwise.
+     * @see RenderPipeline#takeChanges()
+     */
+    @Override
+    public boolean takeChanges() {
+        return mPipeline.takeChanges();
+    }
+
+    /**
+     * Returns all drawers of this screen.
+     * @return drawers of this screen as List<> impl.
+     */
+    @Override
+    public List<? extends Renderable.Drawer> getDrawers() {
+        return mPipeline.getDrawers();
+    }
+
+    /**
+     * Sets canvas and frame as visible.
+     * @see #dispose()
+     */
+    @Override
+    public void display() {
+        setVisible(true);
+        mFrame.setVisible(true);
+    }
+
+    /**
+     * Releases buffers of this screen and disposes its frame.
+     */
+    @Override
+    public void dispose() {
+        if(mStrategy!=null) {
+            mStrategy.dispose();
+            mStrategy=null;
+        }
+        mFrame.dispose();
+    }
+
+    /**
+     * Returns frame related this canvas.
+     * @return {@link JFrame} pre-configured and containing this canvas.
+     */
+    @Override
+    public JFrame getFrame() {
+        return mFrame;
+    }
+
+    @Override
+    public void gainFocus() {
+        setFocusable(true);
+        requestFocus();
+    }
+}
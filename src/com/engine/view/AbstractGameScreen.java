@@ -1,6 +1,7 @@
 package com.engine.view;
 
 import com.engine.Context;
+import com.engine.behavior.RenderLayer;
 import com.engine.behavior.Renderable;
 
 import javax.swing.*;
@@ -8,7 +9,6 @@ import javax.swing.plaf.ComponentUI;
 import java.awt.*;
 import java.awt.event.KeyListener;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -23,23 +23,10 @@ import java.util.List;
 @SuppressWarnings("unused")
 public abstract class AbstractGameScreen extends AbstractScreen implements DisplayableDrawer {
     /**
-     * List that holds all {@link Renderable.Drawer}s
-     * @see Renderable.Drawer
+     * Holds all {@link Renderable.Drawer}s and feeds them.
+     * @see RenderPipeline
      */
-    private final List<Renderable.Drawer> mDrawers= new ArrayList<>() {
-        /**
-         * Appends the specified element to the end of this list.
-         *
-         * @param drawer element to be appended to this list
-         * @return {@code true} (as specified by {@link java.util.Collection::add})
-         */
-        @Override
-        public boolean add(Renderable.Drawer drawer) {
-            if(drawer==null)
-                return false;
-            return super.add(drawer);
-        }
-    };
+    private final RenderPipeline mPipeline;
 
     /**
      * Context is used to access everything inside the app easily.
@@ -47,11 +34,6 @@ public abstract class AbstractGameScreen extends AbstractScreen implements Displ
      */
     protected final Context context;
 
-    /**
-     * Background image displaying.
-     */
-    private final Image mBackgroundImage;
-
     /**
      * Creates a new instance of GameScreen with a context.
      * @see Context
@@ -62,10 +44,8 @@ public abstract class AbstractGameScreen extends AbstractScreen implements Displ
         super("Untitled_Game_2");
         this.context = context;
         URL uri=getBackgroundUri();
-        if(uri==null)
-            mBackgroundImage =null;
-        else
-            mBackgroundImage =new ImageIcon(uri).getImage();
+        mPipeline=new RenderPipeline(uri==null?null:new ImageIcon(uri).getImage());
+        mPipeline.setCamera(context==null?null:context.getCamera());
         setSize(screenSize);
         setName(initialTitle);
     }
@@ -115,50 +95,119 @@ public abstract class AbstractGameScreen extends AbstractScreen implements Displ
     @Override
     protected final void paintComponent(Graphics g) {
         super.paintComponent(g);
-        // create and config two-dimensional graphics
         Graphics2D graphics=(Graphics2D)g;
-        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        // draw game
-        graphics.drawImage(mBackgroundImage, 0, 0, getWidth(), getHeight(), null);
-        Renderable.Drawer[] drawers=mDrawers.toArray(new Renderable.Drawer[0]);
-        for (Renderable.Drawer drawer: drawers) {
-            drawer.drawAll(graphics);
-        }
+        mPipeline.render(graphics, getWidth(), getHeight());
         drawOnTopLayer(graphics);
         g.dispose();
     }
 
     /**
      * Renders everything in the screen.
+     * This is the sync point of the screen, drawers added or removed since the last frame are applied first.
      * @see #paintComponent(Graphics)
      */
     @Override
     public void renderEverything() {
+        mPipeline.sync(getWidth(), getHeight());
+        if(mPipeline.isDirtyTracking()) {
+            Rectangle area=mPipeline.takeDirtyArea(getWidth(), getHeight());
+            if(area!=null)
+                paintImmediately(area);
+            return;
+        }
         repaint();
         paintImmediately(0, 0, getWidth(), getHeight());
     }
 
     /**
-     * Adds Entity's drawer to {@link #mDrawers} implementation
+     * Enables or disables dirty region mode.
+     * In dirty region mode, only the area of the screen that changed since the last frame is repainted,
+     * the whole screen is repainted only if the area covers more than half of it.
+     * Entities report their changes themselves, anything else drawn that changes,
+     * e.g. text drawn by {@link #drawOnTopLayer(Graphics2D)}, must be reported with {@link #invalidate(Rectangle)}.
+     * @param enabled {@code true} to repaint only changed areas, {@code false} to repaint full frames.
+     * @see RenderPipeline#setDirtyTracking(boolean)
+     */
+    public void setDirtyRegionMode(boolean enabled) {
+        mPipeline.setDirtyTracking(enabled);
+    }
+
+    /**
+     * Marks given area to be repainted on the next frame, used in dirty region mode.
+     * @param area changed area, null for the whole screen.
+     * @see #setDirtyRegionMode(boolean)
+     */
+    @Override
+    public void invalidate(Rectangle area) {
+        mPipeline.invalidate(area);
+    }
+
+    /**
+     * Returns the pipeline drawing this screen, used to tune rendering,
+     * e.g. {@link RenderPipeline#setParallelStrips(int)} or {@link RenderPipeline#setRenderScale(double)}.
+     * @return render pipeline of this screen.
+     */
+    @Override
+    public RenderPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Adds Entity's drawer to the drawers of this screen.
+     * Drawers are added on the next sync point.
      * @see Renderable.Drawer
+     * @see RenderPipeline#add(Renderable...)
      * @param entities entities to include in drawing process.
      */
     @Override
-    public synchronized void addEntitiesToDraw(Renderable... entities) {
-        for (Renderable entity : entities) {
-            mDrawers.add(entity.getDrawer(Renderable.Drawer.class));
-        }
+    public void addEntitiesToDraw(Renderable... entities) {
+        mPipeline.add(entities);
     }
 
     /**
      * Removes a given entity's drawer from screen.
+     * Drawer is removed on the next sync point.
+     * @see RenderPipeline#remove(Renderable)
      * @param entity entity to remove its drawer.
      */
     @Override
     public void removeRenderable(Renderable entity) {
-        mDrawers.remove(entity.getDrawer(Renderable.Drawer.class));
+        mPipeline.remove(entity);
+    }
+
+    /**
+     * Adds a drawer that does not belong to an entity, e.g. a tile layer,
+     * drawn before the entity drawers of given layer.
+     * Drawer is added on the next sync point.
+     * @see RenderPipeline#addLayer(RenderLayer, Renderable.Drawer)
+     * @param layer layer to draw in.
+     * @param drawer drawer to add.
+     */
+    @Override
+    public void addLayer(RenderLayer layer, Renderable.Drawer drawer) {
+        mPipeline.addLayer(layer, drawer);
+    }
+
+    /**
+     * Removes given layer drawer from screen.
+     * Drawer is removed on the next sync point.
+     * @see RenderPipeline#removeLayer(Renderable.Drawer)
+     * @param drawer drawer to remove.
+     */
+    @Override
+    public void removeLayer(Renderable.Drawer drawer) {
+        mPipeline.removeLayer(drawer);
+    }
+
+    /**
+     * Returns if anything drawn changed since the last call.
+     * Anything drawn by {@link #drawOnTopLayer(Graphics2D)} that changes must be reported with {@link #invalidate(Rectangle)}.
+     * @return {@code true} if the next frame should be rendered, {@code false} otherwise.
+     * @see RenderPipeline#takeChanges()
+     */
+    @Override
+    public boolean takeChanges() {
+        return mPipeline.takeChanges();
     }
 
     /**
@@ -167,6 +216,6 @@ public abstract class AbstractGameScreen extends AbstractScreen implements Displ
      */
     @Override
     public List<? extends Renderable.Drawer> getDrawers() {
-        return mDrawers;
+        return mPipeline.getDrawers();
     }
 }
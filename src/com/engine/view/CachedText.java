@@ -0,0 +1,99 @@
+package com.engine.view;
+
+import java.awt.*;
+
+/**
+ * Multi-line text drawn on a black background, laid out only when the text or the font changes.
+ * <p>Lines are split by newline characters and measured once, each draw only fills the
+ * backgrounds and draws the lines.</p>
+ */
+public final class CachedText {
+    /**
+     * Current text.
+     */
+    private String mText="";
+
+    /**
+     * Lines of the text, null until laid out.
+     */
+    private String[] mLines;
+
+    /**
+     * Width of each line.
+     */
+    private int[] mWidths;
+
+    /**
+     * Font the text was laid out with.
+     */
+    private Font mFont;
+
+    /**
+     * Height of a line.
+     */
+    private int mLineHeight;
+
+    /**
+     * Sets the text, layout is dropped only if the text differs.
+     * @param text new text.
+     * @return {@code true} if text changed, {@code false} otherwise.
+     */
+    public boolean set(String text) {
+        if(mText.equals(text))
+            return false;
+        mText=text;
+        mLines=null;
+        return true;
+    }
+
+    /**
+     * Returns the text.
+     * @return current text.
+     */
+    public String get() {
+        return mText;
+    }
+
+    /**
+     * Draws the text, each line on a black background covering its width and height.
+     * First line's top left corner is located at given coordinates.
+     * @param graphics graphics to draw the text to.
+     * @param x x coordinate.
+     * @param y y coordinate.
+     */
+    public void draw(Graphics2D graphics, int x, int y) {
+        Font font=graphics.getFont();
+        if(mLines==null||!font.equals(mFont))
+            layout(graphics.getFontMetrics(font));
+        for (int i = 0; i < mLines.length; i++) {
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(x, y, mWidths[i], mLineHeight);
+            y+=mLineHeight;
+            graphics.setColor(Color.WHITE);
+            graphics.drawString(mLines[i], x, y);
+        }
+    }
+
+    /**
+     * Splits and measures the lines.
+     * @param metrics metrics of the font to draw with.
+     */
+    private void layout(FontMetrics metrics) {
+        int count=1;
+        for (int i = 0; i < mText.length(); i++) {
+            if(mText.charAt(i)=='\n') count++;
+        }
+        mLines=new String[count];
+        mWidths=new int[count];
+        int start=0;
+        for (int i = 0; i < count; i++) {
+            int end=mText.indexOf('\n', start);
+            if(end<0) end=mText.length();
+            mLines[i]=mText.substring(start, end);
+            mWidths[i]=metrics.stringWidth(mLines[i]);
+            start=end+1;
+        }
+        mFont=metrics.getFont();
+        mLineHeight=metrics.getHeight();
+    }
+}
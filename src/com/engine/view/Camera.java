@@ -0,0 +1,229 @@
+package com.engine.view;
+
+import com.engine.behavior.Renderable;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * View of the world shown on screen, with a position and a zoom.
+ * <p>Drawers of {@link com.engine.behavior.RenderLayer#isWorldSpace() world layers} draw at world coordinates,
+ * {@link RenderPipeline} applies the transform of the camera once per frame while replaying them,
+ * and culls drawers by the area of the world the camera shows.</p>
+ * The position is the world point shown at the top left corner of the screen. The translation is rounded to
+ * whole screen pixels, so sprites stay sharp and at zoom 1 the camera only shifts pixels.
+ * <p>The camera can follow a renderable smoothly, see {@link #follow(Renderable, double)}.
+ * It's updated by the game loop once per tick.</p>
+ * @see com.engine.Context#getCamera()
+ */
+public final class Camera {
+    /**
+     * Smallest zoom.
+     */
+    public static final double MIN_ZOOM=0.125;
+
+    /**
+     * Largest zoom.
+     */
+    public static final double MAX_ZOOM=8;
+
+    /**
+     * World position of the top left corner of the view.
+     */
+    private double mX, mY;
+
+    /**
+     * Screen pixels per world pixel.
+     */
+    private double mZoom=1;
+
+    /**
+     * Renderable kept in the center of the view, null for none.
+     */
+    private Renderable mTarget;
+
+    /**
+     * Part of the distance to the target covered each tick.
+     */
+    private double mSmoothing=1;
+
+    /**
+     * Size of the screen on the last update.
+     */
+    private int mViewWidth, mViewHeight;
+
+    /**
+     * Is {@code true} if the camera moved or zoomed since the last update.
+     */
+    private boolean mChanged;
+
+    /**
+     * Moves the view so given world point is shown at the top left corner of the screen.
+     * @param x world x.
+     * @param y world y.
+     */
+    public synchronized void setPosition(double x, double y) {
+        if(x==mX&&y==mY)
+            return;
+        mX=x;
+        mY=y;
+        mChanged=true;
+    }
+
+    /**
+     * Moves the view by given world distance.
+     * @param stepsX pixels to move horizontally.
+     * @param stepsY pixels to move vertically.
+     */
+    public synchronized void moveBy(double stepsX, double stepsY) {
+        setPosition(mX+stepsX, mY+stepsY);
+    }
+
+    /**
+     * Returns world x of the top left corner of the view.
+     * @return world x.
+     */
+    public synchronized double getX() {
+        return mX;
+    }
+
+    /**
+     * Returns world y of the top left corner of the view.
+     * @return world y.
+     */
+    public synchronized double getY() {
+        return mY;
+    }
+
+    /**
+     * Sets the zoom, keeping the center of the view in place.
+     * @param zoom screen pixels per world pixel, less than 1 to zoom out.
+     * @throws IllegalArgumentException if zoom is not between {@value #MIN_ZOOM} and {@value #MAX_ZOOM}.
+     */
+    public synchronized void setZoom(double zoom) throws IllegalArgumentException {
+        if(!(zoom>=MIN_ZOOM&&zoom<=MAX_ZOOM))
+            throw new IllegalArgumentException("Zoom must be between "+MIN_ZOOM+" and "+MAX_ZOOM+": "+zoom);
+        if(zoom==mZoom)
+            return;
+        double centerX=mX+mViewWidth/(2*mZoom), centerY=mY+mViewHeight/(2*mZoom);
+        mZoom=zoom;
+        setPosition(centerX-mViewWidth/(2*zoom), centerY-mViewHeight/(2*zoom));
+        mChanged=true;
+    }
+
+    /**
+     * Returns the zoom.
+     * @return screen pixels per world pixel.
+     */
+    public synchronized double getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * Keeps given renderable in the center of the view.
+     * @param target renderable to follow, null to stop following.
+     * @param smoothing part of the distance to the target covered each tick, 1 to stay on the target.
+     * @throws IllegalArgumentException if smoothing is not in (0, 1].
+     */
+    public synchronized void follow(Renderable target, double smoothing) throws IllegalArgumentException {
+        if(!(smoothing>0&&smoothing<=1))
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]: "+smoothing);
+        mTarget=target;
+        mSmoothing=smoothing;
+    }
+
+    /**
+     * Returns the followed renderable.
+     * @return target, null if camera does not follow anything.
+     */
+    public synchronized Renderable getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Moves the view towards the target, called by the game loop once per tick.
+     * @param view size of the screen.
+     * @return {@code true} if the view moved or zoomed since the last update, {@code false} otherwise.
+     */
+    public synchronized boolean update(Dimension view) {
+        mViewWidth=view.width;
+        mViewHeight=view.height;
+        if(mTarget!=null) {
+            double targetX=mTarget.getWorldX()+mTarget.getWidth()/2.0-view.width/(2*mZoom);
+            double targetY=mTarget.getWorldY()+mTarget.getHeight()/2.0-view.height/(2*mZoom);
+            double x=mX+(targetX-mX)*mSmoothing, y=mY+(targetY-mY)*mSmoothing;
+            if(Math.abs(targetX-x)<0.5/mZoom&&Math.abs(targetY-y)<0.5/mZoom) { // less than a screen pixel left
+                x=targetX;
+                y=targetY;
+            }
+            setPosition(x, y);
+        }
+        boolean changed=mChanged;
+        mChanged=false;
+        return changed;
+    }
+
+    /**
+     * Returns if the camera shows the world as it is, at zoom 1 from the origin.
+     * @return {@code true} if world coordinates are screen coordinates, {@code false} otherwise.
+     */
+    public synchronized boolean isIdentity() {
+        return mZoom==1&&offsetX()==0&&offsetY()==0;
+    }
+
+    /**
+     * Returns the transform from world to screen coordinates.
+     * @return new transform.
+     */
+    public synchronized AffineTransform getTransform() {
+        AffineTransform transform=AffineTransform.getTranslateInstance(-offsetX(), -offsetY());
+        transform.scale(mZoom, mZoom);
+        return transform;
+    }
+
+    /**
+     * Converts a point on screen to the world.
+     * @param screen point on screen.
+     * @return new world point.
+     */
+    public synchronized Point toWorld(Point screen) {
+        return new Point((int) Math.floor((screen.x+offsetX())/mZoom), (int) Math.floor((screen.y+offsetY())/mZoom));
+    }
+
+    /**
+     * Converts a world point to the screen.
+     * @param world world point.
+     * @return new point on screen.
+     */
+    public synchronized Point toScreen(Point world) {
+        return new Point((int) Math.round(world.x*mZoom-offsetX()), (int) Math.round(world.y*mZoom-offsetY()));
+    }
+
+    /**
+     * Returns the area of the world shown in given area of the screen, used for culling.
+     * @param screen area of the screen.
+     * @return new world area, rounded outwards.
+     */
+    public synchronized Rectangle toWorld(Rectangle screen) {
+        int left=(int) Math.floor((screen.x+offsetX())/mZoom), top=(int) Math.floor((screen.y+offsetY())/mZoom);
+        int right=(int) Math.ceil((screen.x+screen.width+offsetX())/mZoom);
+        int bottom=(int) Math.ceil((screen.y+screen.height+offsetY())/mZoom);
+        return new Rectangle(left, top, right-left, bottom-top);
+    }
+
+    /**
+     * Returns the horizontal translation as whole screen pixels.
+     * @return screen x of the world origin, negated.
+     */
+    private long offsetX() {
+        return Math.round(mX*mZoom);
+    }
+
+    /**
+     * Returns the vertical translation as whole screen pixels.
+     * @return screen y of the world origin, negated.
+     */
+    private long offsetY() {
+        return Math.round(mY*mZoom);
+    }
+}
@@ -1,7 +1,9 @@
 package com.engine.view;
 
+import com.engine.behavior.RenderLayer;
 import com.engine.behavior.Renderable;
 
+import java.awt.*;
 import java.util.List;
 
 public interface DisplayableDrawer extends Displayable {
@@ -9,4 +11,49 @@ public interface DisplayableDrawer extends Displayable {
     void addEntitiesToDraw(Renderable... entities);
     void removeRenderable(Renderable entity);
     List<? extends Renderable.Drawer> getDrawers();
+
+    /**
+     * Adds a drawer that does not belong to an entity, e.g. a tile layer, drawn in given layer.
+     * Default implementation does not support layer drawers.
+     * @param layer layer to draw in.
+     * @param drawer drawer to add.
+     * @throws UnsupportedOperationException if display cannot draw layer drawers.
+     */
+    default void addLayer(RenderLayer layer, Renderable.Drawer drawer) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Display "+getClass().getSimpleName()+" does not support layer drawers.");
+    }
+
+    /**
+     * Removes a drawer added by {@link #addLayer(RenderLayer, Renderable.Drawer)}.
+     * Default implementation does nothing.
+     * @param drawer drawer to remove.
+     */
+    default void removeLayer(Renderable.Drawer drawer) {
+    }
+
+    /**
+     * Marks given area to be repainted on the next frame.
+     * Default implementation does nothing, for displays that repaint everything each frame.
+     * @param area changed area, null for the whole screen.
+     */
+    default void invalidate(Rectangle area) {
+    }
+
+    /**
+     * Returns the pipeline drawing this display, used to tune rendering.
+     * Default implementation returns {@code null}, for displays that do not draw through a pipeline.
+     * @return render pipeline, null if display has none.
+     */
+    default RenderPipeline getPipeline() {
+        return null;
+    }
+
+    /**
+     * Returns if anything drawn changed since the last call, used to skip rendering idle frames.
+     * Default implementation always returns {@code true}.
+     * @return {@code true} if the next frame should be rendered, {@code false} otherwise.
+     */
+    default boolean takeChanges() {
+        return true;
+    }
 }
@@ -0,0 +1,324 @@
+package com.engine.view;
+
+import com.engine.Context;
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Game screen that renders into a {@link BufferedImage}, without a window.
+ * <p>Frames go through the same {@link RenderPipeline} as {@link AbstractGameScreen} and {@link AbstractActiveGameScreen},
+ * so it works on machines without a display, e.g. to benchmark drawers or compare frames with golden images in tests.
+ * Frames are drawn in a {@link BufferedImage#TYPE_INT_ARGB} image, independent of any screen, so output does not
+ * depend on the machine.</p>
+ * Every {@link #renderEverything()} renders a frame and measures how long rendering took.
+ * @see #capture(Path)
+ * @see #getAverageRenderNanos()
+ */
+@SuppressWarnings("unused")
+public class OffscreenGameScreen implements DisplayableDrawer {
+    /**
+     * Holds all {@link Renderable.Drawer}s and feeds them.
+     * @see RenderPipeline
+     */
+    private final RenderPipeline mPipeline;
+
+    /**
+     * Context is used to access everything inside the app easily.
+     * @see Context
+     */
+    protected final Context context;
+
+    /**
+     * Image frames are rendered into.
+     * @see #getFrameImage()
+     */
+    private final BufferedImage mImage;
+
+    /**
+     * Color the frame is cleared with.
+     */
+    private Color mBackground=Color.BLACK;
+
+    /**
+     * Number of frames rendered since the last reset.
+     */
+    private long mFrames;
+
+    /**
+     * Time spent rendering frames since the last reset, as nanoseconds.
+     */
+    private long mRenderNanos;
+
+    /**
+     * Creates a new offscreen screen.
+     * @param context context.
+     * @param width width of frames.
+     * @param height height of frames.
+     * @param backgroundImage image drawn behind everything, null for no background image.
+     * @throws IllegalArgumentException if size is not positive.
+     */
+    public OffscreenGameScreen(Context context, int width, int height, Image backgroundImage) throws IllegalArgumentException {
+        if(width<=0||height<=0)
+            throw new IllegalArgumentException("Size must be positive: "+width+"x"+height);
+        this.context=context;
+        mPipeline=new RenderPipeline(backgroundImage);
+        mPipeline.setCamera(context==null?null:context.getCamera());
+        mImage=new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Draws things in the top layer of the frame.
+     * Default implementation draws nothing.
+     * @param graphics graphics of the frame to draw things on.
+     */
+    protected void drawOnTopLayer(Graphics2D graphics) {
+    }
+
+    /**
+     * Sets the color the frame is cleared with before drawing.
+     * @param background background color.
+     */
+    public void setBackground(Color background) {
+        mBackground=background;
+    }
+
+    /**
+     * Renders a frame into the frame image.
+     * This is the sync point of the screen, drawers added or removed since the last frame are applied first.
+     * Time of syncing and drawing is added to the render statistics.
+     * @see #getFrameImage()
+     */
+    @Override
+    public void renderEverything() {
+        long start=System.nanoTime();
+        mPipeline.sync(mImage.getWidth(), mImage.getHeight());
+        Graphics2D graphics=mImage.createGraphics();
+        try {
+            graphics.setColor(mBackground);
+            graphics.fillRect(0, 0, mImage.getWidth(), mImage.getHeight());
+            mPipeline.render(graphics, mImage.getWidth(), mImage.getHeight(), mImage);
+            drawOnTopLayer(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        mRenderNanos+=System.nanoTime()-start;
+        mFrames++;
+    }
+
+    /**
+     * Renders given number of frames without updating anything, to measure pure render throughput.
+     * Statistics are reset first.
+     * @param frames number of frames to render.
+     * @return average time of a frame as nanoseconds.
+     * @throws IllegalArgumentException if frames is not positive.
+     */
+    public double benchmark(int frames) throws IllegalArgumentException {
+        if(frames<=0)
+            throw new IllegalArgumentException("Frames must be positive: "+frames);
+        resetStatistics();
+        for (int i = 0; i < frames; i++) {
+            renderEverything();
+        }
+        return getAverageRenderNanos();
+    }
+
+    /**
+     * Returns number of frames rendered since the last reset.
+     * @return number of frames.
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Returns average time of rendering a frame since the last reset.
+     * @return nanoseconds per frame, 0 if no frame is rendered.
+     */
+    public double getAverageRenderNanos() {
+        return mFrames==0?0:(double) mRenderNanos/mFrames;
+    }
+
+    /**
+     * Resets frame count and render time.
+     */
+    public void resetStatistics() {
+        mFrames=0;
+        mRenderNanos=0;
+    }
+
+    /**
+     * Returns the image of the last frame.
+     * The image is reused, the next frame is rendered into it.
+     * @return frame image.
+     */
+    public BufferedImage getFrameImage() {
+        return mImage;
+    }
+
+    /**
+     * Returns pixels of the last frame.
+     * @return copy of the pixels as ARGB, row by row.
+     */
+    public int[] getPixels() {
+        int[] pixels=((DataBufferInt) mImage.getRaster().getDataBuffer()).getData();
+        return Arrays.copyOf(pixels, pixels.length);
+    }
+
+    /**
+     * Writes the last frame to a PNG file.
+     * @param file file to write, parent directories are created.
+     * @throws IOException if file can't be written.
+     */
+    public void capture(Path file) throws IOException {
+        Path parent=file.toAbsolutePath().getParent();
+        if(parent!=null)
+            Files.createDirectories(parent);
+        if(!ImageIO.write(mImage, "png", file.toFile()))
+            throw new IOException("No PNG writer found");
+    }
+
+    /**
+     * Returns the pipeline drawing this screen, used to tune rendering,
+     * e.g. {@link RenderPipeline#setParallelStrips(int)} or {@link RenderPipeline#setRenderScale(double)}.
+     * @return render pipeline of this screen.
+     */
+    @Override
+    public RenderPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Adds Entity's drawer to the drawers of this screen.
+     * Drawers are added on the next sync point.
+     * @see RenderPipeline#add(Renderable...)
+     * @param entities entities to include in drawing process.
+     */
+    @Override
+    public void addEntitiesToDraw(Renderable... entities) {
+        mPipeline.add(entities);
+    }
+
+    /**
+     * Removes a given entity's drawer from screen.
+     * Drawer is removed on the next sync point.
+     * @see RenderPipeline#remove(Renderable)
+     * @param entity entity to remove its drawer.
+     */
+    @Override
+    public void removeRenderable(Renderable entity) {
+        mPipeline.remove(entity);
+    }
+
+    /**
+     * Adds a drawer that does not belong to an entity, e.g. a tile layer,
+     * drawn before the entity drawers of given layer.
+     * Drawer is added on the next sync point.
+     * @see RenderPipeline#addLayer(RenderLayer, Renderable.Drawer)
+     * @param layer layer to draw in.
+     * @param drawer drawer to add.
+     */
+    @Override
+    public void addLayer(RenderLayer layer, Renderable.Drawer drawer) {
+        mPipeline.addLayer(layer, drawer);
+    }
+
+    /**
+     * Removes given layer drawer from screen.
+     * Drawer is removed on the next sync point.
+     * @see RenderPipeline#removeLayer(Renderable.Drawer)
+     * @param drawer drawer to remove.
+     */
+    @Override
+    public void removeLayer(Renderable.Drawer drawer) {
+        mPipeline.removeLayer(drawer);
+    }
+
+    /**
+     * Marks the next frame changed for on-demand rendering, every frame is rendered fully.
+     * @param area changed area.
+     * @see #takeChanges()
+     */
+    @Override
+    public void invalidate(Rectangle area) {
+        mPipeline.invalidate(area);
+    }
+
+    /**
+     * Returns if anything drawn changed since the last call.
+     * Anything drawn by {@link #drawOnTopLayer(Graphics2D)} that changes must be reported with {@link #invalidate(Rectangle)}.
+     * @return {@code true} if the next frame should be rendered, {@code false} otherwise.
+     * @see RenderPipeline#takeChanges()
+     */
+    @Override
+    public boolean takeChanges() {
+        return mPipeline.takeChanges();
+    }
+
+    /**
+     * Returns all drawers of this screen.
+     * @return drawers of this screen as List<> impl.
+     */
+    @Override
+    public List<? extends Renderable.Drawer> getDrawers() {
+        return mPipeline.getDrawers();
+    }
+
+    /**
+     * Does nothing, there is no window.
+     */
+    @Override
+    public void display() {
+    }
+
+    /**
+     * Does nothing, there is no window.
+     */
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * Returns null, there is no window.
+     * @return null.
+     */
+    @Override
+    public JFrame getFrame() {
+        return null;
+    }
+
+    /**
+     * Returns the size of frames.
+     * @return new dimension of frame size.
+     */
+    @Override
+    public Dimension dimension() {
+        return new Dimension(mImage.getWidth(), mImage.getHeight());
+    }
+
+    /**
+     * Does nothing, there is no window to receive key events.
+     * @param listener ignored listener.
+     */
+    @Override
+    public void addKeyListener(KeyListener listener) {
+    }
+
+    /**
+     * Does nothing, there is no window.
+     */
+    @Override
+    public void gainFocus() {
+    }
+}
@@ -0,0 +1,141 @@
+package com.engine.view;
+
+import com.engine.Context;
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
+import com.engine.sprite.CompatibleImages;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Background made of several layers scrolling horizontally at different speeds.
+ * <p>Each layer is scaled once to the height of the screen into a {@link CompatibleImages compatible} image,
+ * keeping its aspect ratio, and tiled horizontally by the scroll offset, so a frame only copies images.
+ * Layers are scaled again only when the height of the screen changes.</p>
+ * Layers are drawn in the order they were added, add it to a screen with
+ * {@link DisplayableDrawer#addLayer(RenderLayer, Renderable.Drawer)} in {@link RenderLayer#BACKGROUND}.
+ */
+public final class ParallaxBackground implements Renderable.Drawer {
+    /**
+     * Context used to get the display.
+     */
+    private final Context mContext;
+
+    /**
+     * Layers in drawing order, replaced when a layer is added.
+     */
+    private volatile Layer[] mLayers=new Layer[0];
+
+    /**
+     * Scroll offset as pixels, layers move by it times their factor.
+     */
+    private volatile double mOffset;
+
+    /**
+     * Context constructor.
+     * @param context game context.
+     */
+    public ParallaxBackground(Context context) {
+        mContext=context;
+    }
+
+    /**
+     * Adds a layer drawn over the previous layers.
+     * @param image image of the layer, loaded completely.
+     * @param factor how fast the layer scrolls relative to the offset,
+     *               0 for a layer that does not move, 1 for a layer that moves with the map.
+     * @throws IllegalArgumentException if image has no size yet.
+     */
+    public synchronized void addLayer(Image image, double factor) throws IllegalArgumentException {
+        if(image.getWidth(null)<=0||image.getHeight(null)<=0)
+            throw new IllegalArgumentException("Image is not loaded");
+        Layer[] layers=Arrays.copyOf(mLayers, mLayers.length+1);
+        layers[layers.length-1]=new Layer(image, factor);
+        mLayers=layers;
+        mContext.getDisplay(DisplayableDrawer.class).invalidate(null);
+    }
+
+    /**
+     * Scrolls the background, e.g. when the map moves.
+     * @param steps pixels to scroll, positive moves layers right.
+     */
+    public synchronized void scroll(double steps) {
+        setOffset(mOffset+steps);
+    }
+
+    /**
+     * Sets the scroll offset.
+     * @param offset offset as pixels.
+     */
+    public synchronized void setOffset(double offset) {
+        if(offset==mOffset)
+            return;
+        mOffset=offset;
+        mContext.getDisplay(DisplayableDrawer.class).invalidate(null);
+    }
+
+    /**
+     * Returns the scroll offset.
+     * @return offset as pixels.
+     */
+    public double getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Background only changes when it's scrolled or a layer is added.
+     * @return {@code false}.
+     */
+    @Override
+    public boolean isAnimated() {
+        return false;
+    }
+
+    /**
+     * Draws each layer tiled horizontally over the screen.
+     * Farthest layers are left out when the quality tier limits the parallax depth.
+     * @param graphics graphics to draw the background.
+     * @see QualityGovernor.Tier#getParallaxDepth()
+     */
+    @Override
+    public void drawAll(Graphics2D graphics) {
+        Dimension screen=mContext.getDisplay(DisplayableDrawer.class).dimension();
+        double offset=mOffset;
+        Layer[] layers=mLayers;
+        for (int i = Math.max(0, layers.length-QualityGovernor.getShared().getTier().getParallaxDepth()); i < layers.length; i++) {
+            Layer layer=layers[i];
+            BufferedImage scaled=layer.getScaled(screen.height);
+            int width=scaled.getWidth();
+            for (int x = Math.floorMod((int) Math.round(offset*layer.mFactor), width)-width; x < screen.width; x+=width) {
+                graphics.drawImage(scaled, x, 0, null);
+            }
+        }
+    }
+
+    /**
+     * Image of a layer and its copy scaled to the screen.
+     */
+    private static final class Layer {
+        private final Image mImage;
+        private final double mFactor;
+        private volatile BufferedImage mScaled;
+
+        private Layer(Image image, double factor) {
+            mImage=image;
+            mFactor=factor;
+        }
+
+        private BufferedImage getScaled(int screenHeight) {
+            int height=Math.max(screenHeight, 1);
+            BufferedImage scaled=mScaled;
+            if(scaled==null||scaled.getHeight()!=height) {
+                int width=Math.max(1, (int) Math.round((double) mImage.getWidth(null)*height/mImage.getHeight(null)));
+                scaled=CompatibleImages.scale(mImage, width, height);
+                mScaled=scaled;
+            }
+            return scaled;
+        }
+    }
+}
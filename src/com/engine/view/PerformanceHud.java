@@ -0,0 +1,217 @@
+package com.engine.view;
+
+import com.engine.behavior.Renderable;
+
+import java.awt.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Overlay showing how the game performs: a graph of frame times, timings of the tick phases,
+ * entity and drawer counts, allocation rate of the game thread and garbage collection pauses.
+ * <p>The game loop reports each tick with {@link #tick(long, long, int, int)}, see
+ * {@link com.engine.AbstractGame#setPerformanceHud(PerformanceHud)}.
+ * Draw it from {@code drawOnTopLayer} with {@link #drawAll(Graphics2D)},
+ * or add it to {@link com.engine.behavior.RenderLayer#HUD}.</p>
+ * <p>Statistics are summed up every {@value #REFRESH_MILLIS} milliseconds, the text is laid out only then,
+ * so drawing the overlay does not distort the numbers it shows.</p>
+ */
+public final class PerformanceHud implements Renderable.Drawer {
+    /**
+     * Number of frame times shown in the graph.
+     */
+    private static final int SAMPLES=120;
+
+    /**
+     * Time between two refreshes of the text.
+     */
+    private static final long REFRESH_MILLIS=500;
+
+    /**
+     * Height of the graph as pixels.
+     */
+    private static final int GRAPH_HEIGHT=60;
+
+    /**
+     * Background of the graph.
+     */
+    private static final Color GRAPH_BACKGROUND=new Color(0, 0, 0, 160);
+
+    /**
+     * Frame times as nanoseconds, a ring buffer.
+     */
+    private final long[] mFrameNanos=new long[SAMPLES];
+
+    /**
+     * Index of the next sample in {@link #mFrameNanos}.
+     */
+    private int mNextSample;
+
+    /**
+     * Time of the last tick, 0 before the first tick.
+     */
+    private long mLastTickNanos;
+
+    /**
+     * Sums of the current refresh interval.
+     */
+    private long mUpdateSum, mRenderSum, mFrameSum, mFrameMax;
+
+    /**
+     * Ticks of the current refresh interval.
+     */
+    private int mTicks;
+
+    /**
+     * Start of the current refresh interval.
+     */
+    private long mIntervalStartNanos;
+
+    /**
+     * Bytes allocated by the game thread at the start of the interval, negative if not supported.
+     */
+    private long mAllocatedBytes=-1;
+
+    /**
+     * Collection count and time of all collectors at the start of the interval.
+     */
+    private long mGcCount, mGcMillis;
+
+    /**
+     * Expected frame time, drawn as a line in the graph.
+     */
+    private volatile long mTargetFrameNanos=1_000_000_000L/60;
+
+    /**
+     * Text of the overlay.
+     */
+    private final CachedText mText=new CachedText();
+
+    /**
+     * Sets the expected frame time, drawn as a line in the graph.
+     * @param fps target fps of the game.
+     * @throws IllegalArgumentException if fps is not positive.
+     */
+    public void setTargetFPS(int fps) throws IllegalArgumentException {
+        if(fps<=0)
+            throw new IllegalArgumentException("FPS must be positive: "+fps);
+        mTargetFrameNanos=1_000_000_000L/fps;
+    }
+
+    /**
+     * Reports a tick, called by the game thread after rendering.
+     * @param updateNanos time spent updating as nanoseconds.
+     * @param renderNanos time spent rendering as nanoseconds.
+     * @param entities number of entities.
+     * @param drawers number of drawers on screen.
+     */
+    public synchronized void tick(long updateNanos, long renderNanos, int entities, int drawers) {
+        long now=System.nanoTime();
+        if(mLastTickNanos==0) {
+            mLastTickNanos=now;
+            startInterval(now);
+            return;
+        }
+        long frame=now-mLastTickNanos;
+        mLastTickNanos=now;
+        mFrameNanos[mNextSample]=frame;
+        mNextSample=(mNextSample+1)%SAMPLES;
+        mUpdateSum+=updateNanos;
+        mRenderSum+=renderNanos;
+        mFrameSum+=frame;
+        mFrameMax=Math.max(mFrameMax, frame);
+        mTicks++;
+        if(now-mIntervalStartNanos>=REFRESH_MILLIS*1_000_000)
+            refresh(now, entities, drawers);
+    }
+
+    /**
+     * Frame times change every tick.
+     * @return {@code true}.
+     */
+    @Override
+    public boolean isAnimated() {
+        return true;
+    }
+
+    /**
+     * Draws the text and the frame time graph at the top left corner.
+     * @param graphics graphics to draw the overlay.
+     */
+    @Override
+    public synchronized void drawAll(Graphics2D graphics) {
+        int x=8, y=8;
+        mText.draw(graphics, x, y);
+        y+=graphics.getFontMetrics().getHeight()*7+4;
+        graphics.setColor(GRAPH_BACKGROUND);
+        graphics.fillRect(x, y, SAMPLES*2, GRAPH_HEIGHT);
+        long scale=Math.max(1, mTargetFrameNanos*2); // graph shows up to twice the target frame time
+        int target=(int) (GRAPH_HEIGHT*mTargetFrameNanos/scale);
+        graphics.setColor(Color.GREEN);
+        for (int i = 0; i < SAMPLES; i++) {
+            long frame=mFrameNanos[(mNextSample+i)%SAMPLES];
+            int height=(int) Math.min(GRAPH_HEIGHT, GRAPH_HEIGHT*frame/scale);
+            if(height>target) graphics.setColor(Color.RED);
+            graphics.fillRect(x+i*2, y+GRAPH_HEIGHT-height, 2, height);
+            if(height>target) graphics.setColor(Color.GREEN);
+        }
+        graphics.setColor(Color.WHITE);
+        graphics.drawLine(x, y+GRAPH_HEIGHT-target, x+SAMPLES*2, y+GRAPH_HEIGHT-target);
+    }
+
+    /**
+     * Sums up the interval into the text and starts the next interval.
+     * @param now current time as nanoseconds.
+     * @param entities number of entities.
+     * @param drawers number of drawers.
+     */
+    private void refresh(long now, int entities, int drawers) {
+        double seconds=(now-mIntervalStartNanos)/1e9;
+        long allocated=mAllocatedBytes;
+        long gcCount=mGcCount, gcMillis=mGcMillis;
+        startInterval(now);
+        QualityGovernor governor=QualityGovernor.getShared();
+        String allocation=allocated<0||mAllocatedBytes<0?"n/a"
+                :(long) ((mAllocatedBytes-allocated)/seconds/1024)+" KiB/s";
+        mText.set("fps "+Math.round(mTicks/seconds)
+                +"\nframe avg "+millis(mFrameSum/mTicks)+" max "+millis(mFrameMax)+" ms"
+                +"\nupdate "+millis(mUpdateSum/mTicks)+" render "+millis(mRenderSum/mTicks)+" ms"
+                +"\nentities "+entities+" drawers "+drawers
+                +"\nalloc "+allocation
+                +"\ngc "+(mGcCount-gcCount)+" pauses "+(mGcMillis-gcMillis)+" ms"
+                +"\nquality "+governor.getTier()+" transitions "+governor.getTransitions());
+        mUpdateSum=mRenderSum=mFrameSum=mFrameMax=0;
+        mTicks=0;
+    }
+
+    /**
+     * Samples allocation and garbage collection counters at the start of an interval.
+     * @param now current time as nanoseconds.
+     */
+    private void startInterval(long now) {
+        mIntervalStartNanos=now;
+        ThreadMXBean threads=ManagementFactory.getThreadMXBean();
+        mAllocatedBytes=threads instanceof com.sun.management.ThreadMXBean sunThreads
+                ?sunThreads.getThreadAllocatedBytes(Thread.currentThread().threadId()):-1;
+        long count=0, millis=0;
+        List<GarbageCollectorMXBean> collectors=ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < collectors.size(); i++) {
+            count+=Math.max(0, collectors.get(i).getCollectionCount());
+            millis+=Math.max(0, collectors.get(i).getCollectionTime());
+        }
+        mGcCount=count;
+        mGcMillis=millis;
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds with one decimal.
+     * @param nanos time as nanoseconds.
+     * @return formatted milliseconds.
+     */
+    private static String millis(long nanos) {
+        long tenths=nanos/100_000;
+        return tenths/10+"."+tenths%10;
+    }
+}
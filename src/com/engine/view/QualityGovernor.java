@@ -0,0 +1,239 @@
+package com.engine.view;
+
+import java.awt.*;
+
+/**
+ * Steps render quality down when frames overrun their budget and back up when there is headroom.
+ * <p>The game loop reports the time of each tick, updating and rendering without sleeping.
+ * Ticks are averaged over {@value #WINDOW} ticks, a window over budget steps one {@link Tier} down at once,
+ * while {@value #HEADROOM_WINDOWS} windows in a row under {@value #HEADROOM} of the budget are needed to step up,
+ * so quality does not flicker between tiers.</p>
+ * The governor is disabled until a frame budget is set, quality stays {@link Tier#HIGH} meanwhile.
+ * @see #getShared()
+ * @see #setFrameBudget(long)
+ */
+public final class QualityGovernor {
+    /**
+     * Governor reported to by the game loop.
+     */
+    private static final QualityGovernor smShared=new QualityGovernor();
+
+    /**
+     * Number of ticks averaged.
+     */
+    private static final int WINDOW=30;
+
+    /**
+     * Part of the budget under which a window has headroom.
+     */
+    private static final double HEADROOM=0.6;
+
+    /**
+     * Number of windows in a row with headroom needed to step up.
+     */
+    private static final int HEADROOM_WINDOWS=4;
+
+    /**
+     * Quality tiers, from the cheapest to the best.
+     */
+    public enum Tier {
+        /**
+         * No antialiasing, nearest neighbour scaling, no debug overlays, only the nearest parallax layer.
+         */
+        LOW(RenderingHints.VALUE_ANTIALIAS_OFF, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF,
+                RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, false, 1),
+        /**
+         * Text antialiasing only, bilinear scaling, no debug overlays, two nearest parallax layers.
+         */
+        MEDIUM(RenderingHints.VALUE_ANTIALIAS_OFF, RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+                RenderingHints.VALUE_RENDER_DEFAULT, RenderingHints.VALUE_INTERPOLATION_BILINEAR, false, 2),
+        /**
+         * Antialiasing, quality rendering, bilinear scaling, debug overlays and all parallax layers.
+         */
+        HIGH(RenderingHints.VALUE_ANTIALIAS_ON, RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+                RenderingHints.VALUE_RENDER_QUALITY, RenderingHints.VALUE_INTERPOLATION_BILINEAR, true, Integer.MAX_VALUE);
+
+        /**
+         * Values of the antialiasing, text antialiasing, rendering and interpolation hints.
+         */
+        private final Object mAntialiasing, mTextAntialiasing, mRendering, mInterpolation;
+
+        /**
+         * Is {@code true} if debug overlays of entities are drawn.
+         */
+        private final boolean mDebugOverlays;
+
+        /**
+         * Number of the nearest parallax layers drawn.
+         */
+        private final int mParallaxDepth;
+
+        /**
+         * Hints constructor.
+         * @param antialiasing value of {@link RenderingHints#KEY_ANTIALIASING}.
+         * @param textAntialiasing value of {@link RenderingHints#KEY_TEXT_ANTIALIASING}.
+         * @param rendering value of {@link RenderingHints#KEY_RENDERING}.
+         * @param interpolation value of {@link RenderingHints#KEY_INTERPOLATION}.
+         * @param debugOverlays {@code true} to draw debug overlays.
+         * @param parallaxDepth number of parallax layers drawn.
+         */
+        Tier(Object antialiasing, Object textAntialiasing, Object rendering, Object interpolation,
+             boolean debugOverlays, int parallaxDepth) {
+            mAntialiasing=antialiasing;
+            mTextAntialiasing=textAntialiasing;
+            mRendering=rendering;
+            mInterpolation=interpolation;
+            mDebugOverlays=debugOverlays;
+            mParallaxDepth=parallaxDepth;
+        }
+
+        /**
+         * Sets rendering hints of this tier on given graphics.
+         * @param graphics graphics to configure.
+         */
+        public void configure(Graphics2D graphics) {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, mAntialiasing);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, mTextAntialiasing);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, mRendering);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, mInterpolation);
+        }
+
+        /**
+         * Returns if debug overlays of entities are drawn in this tier.
+         * @return {@code true} if debug overlays are drawn, {@code false} otherwise.
+         */
+        public boolean drawsDebugOverlays() {
+            return mDebugOverlays;
+        }
+
+        /**
+         * Returns how many of the nearest parallax layers are drawn in this tier.
+         * @return number of layers.
+         * @see ParallaxBackground
+         */
+        public int getParallaxDepth() {
+            return mParallaxDepth;
+        }
+    }
+
+    /**
+     * Current tier.
+     */
+    private volatile Tier mTier=Tier.HIGH;
+
+    /**
+     * Time a tick may take as nanoseconds, 0 while disabled.
+     */
+    private long mFrameBudget_nanos;
+
+    /**
+     * Ticks in the current window.
+     */
+    private int mTicks;
+
+    /**
+     * Time of the ticks in the current window as nanoseconds.
+     */
+    private long mTickSum_nanos;
+
+    /**
+     * Windows in a row with headroom.
+     */
+    private int mHeadroomWindows;
+
+    /**
+     * Number of transitions down and up since the governor was created.
+     */
+    private long mStepDowns, mStepUps;
+
+    /**
+     * Returns the governor reported to by the game loop.
+     * @return shared governor.
+     */
+    public static QualityGovernor getShared() {
+        return smShared;
+    }
+
+    /**
+     * Sets time a tick may take and starts governing quality, from {@link Tier#HIGH}.
+     * @param budgetNanos budget as nanoseconds, e.g. the frame time of the target FPS, 0 or less to disable governing.
+     */
+    public synchronized void setFrameBudget(long budgetNanos) {
+        mFrameBudget_nanos=Math.max(0, budgetNanos);
+        mTicks=0;
+        mTickSum_nanos=0;
+        mHeadroomWindows=0;
+        mTier=Tier.HIGH;
+    }
+
+    /**
+     * Returns time a tick may take.
+     * @return budget as nanoseconds, 0 while disabled.
+     */
+    public synchronized long getFrameBudget() {
+        return mFrameBudget_nanos;
+    }
+
+    /**
+     * Reports a tick, called by the game loop, steps the tier at the end of a window.
+     * @param tickNanos time spent updating and rendering as nanoseconds.
+     */
+    public synchronized void tick(long tickNanos) {
+        if(mFrameBudget_nanos<=0)
+            return;
+        mTickSum_nanos+=tickNanos;
+        if(++mTicks<WINDOW)
+            return;
+        long average=mTickSum_nanos/mTicks;
+        mTicks=0;
+        mTickSum_nanos=0;
+        Tier[] tiers=Tier.values();
+        if(average>mFrameBudget_nanos) {
+            mHeadroomWindows=0;
+            if(mTier.ordinal()>0) {
+                mTier=tiers[mTier.ordinal()-1];
+                mStepDowns++;
+            }
+        } else if(average<mFrameBudget_nanos*HEADROOM) {
+            if(++mHeadroomWindows>=HEADROOM_WINDOWS&&mTier.ordinal()<tiers.length-1) {
+                mHeadroomWindows=0;
+                mTier=tiers[mTier.ordinal()+1];
+                mStepUps++;
+            }
+        } else {
+            mHeadroomWindows=0;
+        }
+    }
+
+    /**
+     * Returns the current tier.
+     * @return current tier, {@link Tier#HIGH} while disabled.
+     */
+    public Tier getTier() {
+        return mTier;
+    }
+
+    /**
+     * Returns number of times quality was stepped down.
+     * @return number of transitions down.
+     */
+    public synchronized long getStepDowns() {
+        return mStepDowns;
+    }
+
+    /**
+     * Returns number of times quality was stepped up.
+     * @return number of transitions up.
+     */
+    public synchronized long getStepUps() {
+        return mStepUps;
+    }
+
+    /**
+     * Returns number of tier changes.
+     * @return number of transitions.
+     */
+    public synchronized long getTransitions() {
+        return mStepDowns+mStepUps;
+    }
+}
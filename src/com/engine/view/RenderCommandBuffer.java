@@ -0,0 +1,295 @@
+package com.engine.view;
+
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
+import com.engine.sprite.RasterBlitter;
+import com.engine.sprite.Sprite;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draw commands recorded by the game thread for one frame, replayed later by the painting thread.
+ * <p>A command is an image id, bounds and a {@link RenderLayer}, packed in an int array.
+ * Images are {@link Sprite}s or plain {@link Image}s, each distinct image of a frame gets one id.
+ * Drawers that cannot be recorded are kept as live commands and called while replaying.</p>
+ * <p>The buffer is reused, {@link #clear()} empties it without releasing its storage.
+ * It's not synchronized, {@link RenderPipeline} never records into a buffer that is published or being replayed
+ * and locks a buffer while using it.</p>
+ * @see Renderable.Drawer#record(RenderCommandBuffer, RenderLayer)
+ */
+public final class RenderCommandBuffer {
+    /**
+     * Image id of live commands, commands that call a drawer.
+     */
+    public static final int LIVE=-1;
+
+    /**
+     * Number of ints of each command.
+     */
+    private static final int STRIDE=6;
+
+    /**
+     * Commands, {@value #STRIDE} ints each: image id, x, y, width, height and layer ordinal.
+     * Width is negative for commands drawn regardless of the clip.
+     */
+    private int[] mCommands=new int[64*STRIDE];
+
+    /**
+     * Drawer of each live command, by command index.
+     */
+    private Renderable.Drawer[] mDrawers=new Renderable.Drawer[64];
+
+    /**
+     * Number of recorded commands.
+     */
+    private int mSize;
+
+    /**
+     * Images of this frame by id.
+     */
+    private final List<Object> mImages=new ArrayList<>();
+
+    /**
+     * Ids of images of this frame.
+     */
+    private final Map<Object, Integer> mImageIds=new IdentityHashMap<>();
+
+    /**
+     * Command indexes in replay order, reused every replay.
+     */
+    private int[] mOrder=new int[64];
+
+    /**
+     * Number of commands of each layer, reused every replay.
+     */
+    private final int[] mLayerStarts=new int[RenderLayer.values().length+1];
+
+    /**
+     * Records a sprite drawn scaled to given bounds.
+     * @param sprite sprite to draw.
+     * @param x x of bounds.
+     * @param y y of bounds.
+     * @param width width of bounds.
+     * @param height height of bounds.
+     * @param layer layer to draw in.
+     * @see Sprite#draw(Graphics2D, int, int, int, int)
+     */
+    public void drawSprite(Sprite sprite, int x, int y, int width, int height, RenderLayer layer) {
+        record(imageId(sprite), x, y, width, height, layer, null);
+    }
+
+    /**
+     * Records an image drawn scaled to given bounds.
+     * @param image image to draw.
+     * @param x x of bounds.
+     * @param y y of bounds.
+     * @param width width of bounds.
+     * @param height height of bounds.
+     * @param layer layer to draw in.
+     */
+    public void drawImage(Image image, int x, int y, int width, int height, RenderLayer layer) {
+        record(imageId(image), x, y, width, height, layer, null);
+    }
+
+    /**
+     * Records a drawer called while replaying.
+     * @param drawer drawer to call.
+     * @param layer layer to draw in.
+     * @param bounds bounds the drawer draws in, null if unknown, the drawer is then called regardless of the clip.
+     */
+    public void drawLive(Renderable.Drawer drawer, RenderLayer layer, Rectangle bounds) {
+        if(bounds==null)
+            record(LIVE, 0, 0, -1, -1, layer, drawer);
+        else
+            record(LIVE, bounds.x, bounds.y, bounds.width, bounds.height, layer, drawer);
+    }
+
+    /**
+     * Returns number of recorded commands.
+     * @return number of commands.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns number of distinct images of recorded commands.
+     * @return number of image ids in use.
+     */
+    public int getImageCount() {
+        return mImages.size();
+    }
+
+    /**
+     * Removes all commands, storage is kept for the next frame.
+     */
+    public void clear() {
+        Arrays.fill(mDrawers, 0, mSize, null);
+        mSize=0;
+        mImages.clear();
+        mImageIds.clear();
+    }
+
+    /**
+     * Sorts commands by layer, keeping the order they were recorded inside a layer,
+     * and draws commands intersecting the clip of given graphics.
+     * @param graphics graphics to draw to.
+     */
+    public void replay(Graphics2D graphics) {
+        sort();
+        draw(graphics, null, null, null);
+    }
+
+    /**
+     * Sorts commands by layer, keeping the order they were recorded inside a layer.
+     * @see #draw(Graphics2D, Object, BufferedImage, AffineTransform)
+     */
+    void sort() {
+        if(mOrder.length<mSize)
+            mOrder=new int[mCommands.length/STRIDE];
+        Arrays.fill(mLayerStarts, 0);
+        for (int i = 0; i < mSize; i++) {
+            mLayerStarts[mCommands[i*STRIDE+5]+1]++;
+        }
+        for (int layer = 1; layer < mLayerStarts.length; layer++) {
+            mLayerStarts[layer]+=mLayerStarts[layer-1];
+        }
+        for (int i = 0; i < mSize; i++) { // counting sort, stable
+            mOrder[mLayerStarts[mCommands[i*STRIDE+5]]++]=i;
+        }
+    }
+
+    /**
+     * Draws sorted commands intersecting the clip of given graphics.
+     * Can be called by several threads at once, each with its own clip, after {@link #sort()}.
+     * Commands of {@link RenderLayer#isWorldSpace() world layers} are drawn through given world transform,
+     * so they are culled by the area of the world the clip shows.
+     * @param graphics graphics to draw to.
+     * @param liveLock lock held while calling drawers of live commands, which may not be thread safe,
+     *                 null to call them without a lock.
+     * @param target image the graphics draws into, opaque sprites drawn at their own size are copied into it
+     *               by {@link RasterBlitter}, null to draw everything through the graphics.
+     * @param world transform from world to screen coordinates, null if they are the same.
+     */
+    void draw(Graphics2D graphics, Object liveLock, BufferedImage target, AffineTransform world) {
+        AffineTransform screen=graphics.getTransform(), worldScreen=null;
+        if(world!=null) {
+            worldScreen=new AffineTransform(screen);
+            worldScreen.concatenate(world);
+        }
+        boolean supported=target!=null&&RasterBlitter.supports(target);
+        RenderLayer[] layers=RenderLayer.values();
+        int currentLayer=-1;
+        Rectangle clip=null, blitClip=null;
+        double scale=1;
+        int blitX=0, blitY=0;
+        boolean blit=false;
+        for (int n = 0; n < mSize; n++) {
+            int i=mOrder[n], offset=i*STRIDE;
+            if(mCommands[offset+5]!=currentLayer) { // transform, clip and fast paths change with the space of the layer
+                currentLayer=mCommands[offset+5];
+                if(worldScreen!=null)
+                    graphics.setTransform(layers[currentLayer].isWorldSpace()?worldScreen:screen);
+                AffineTransform transform=graphics.getTransform();
+                clip=graphics.getClipBounds();
+                scale=Math.min(Math.abs(transform.getScaleX()), Math.abs(transform.getScaleY()));
+                blitX=(int) transform.getTranslateX();
+                blitY=(int) transform.getTranslateY();
+                blit=supported&&(transform.getType()&~AffineTransform.TYPE_TRANSLATION)==0
+                        &&blitX==transform.getTranslateX()&&blitY==transform.getTranslateY();
+                blitClip=clip==null?null:new Rectangle(clip.x+blitX, clip.y+blitY, clip.width, clip.height);
+            }
+            int x=mCommands[offset+1], y=mCommands[offset+2], width=mCommands[offset+3], height=mCommands[offset+4];
+            if(clip!=null&&width>=0&&!(x<clip.x+clip.width&&clip.x<x+Math.max(width, 1)
+                    &&y<clip.y+clip.height&&clip.y<y+Math.max(height, 1)))
+                continue;
+            int image=mCommands[offset];
+            if(image==LIVE&&liveLock!=null) {
+                synchronized (liveLock) {
+                    mDrawers[i].drawAll(graphics);
+                }
+            } else if(image==LIVE)
+                mDrawers[i].drawAll(graphics);
+            else if(mImages.get(image) instanceof Sprite sprite)
+                drawSprite(graphics, sprite, x, y, width, height, scale, blit?target:null, blitX, blitY, blitClip);
+            else
+                graphics.drawImage((Image) mImages.get(image), x, y, width, height, null);
+        }
+        graphics.setTransform(screen);
+    }
+
+    /**
+     * Draws a sprite command the cheapest way.
+     * Opaque sprites drawn at their own size are copied into the target, sprites shown smaller than half
+     * their size are drawn from a {@link Sprite#getMipmap(double) mip level}, the rest are drawn by the sprite.
+     * @param graphics graphics to draw to.
+     * @param sprite sprite to draw.
+     * @param x x of bounds.
+     * @param y y of bounds.
+     * @param width width of bounds.
+     * @param height height of bounds.
+     * @param scale scale of the graphics.
+     * @param target image to blit into, null if blitting is not possible.
+     * @param blitX x translation of the graphics, as whole pixels.
+     * @param blitY y translation of the graphics, as whole pixels.
+     * @param blitClip clip in pixels of the target, null for none.
+     */
+    private static void drawSprite(Graphics2D graphics, Sprite sprite, int x, int y, int width, int height,
+                                   double scale, BufferedImage target, int blitX, int blitY, Rectangle blitClip) {
+        if(target!=null&&width==sprite.getWidth()&&height==sprite.getHeight()
+                &&RasterBlitter.blit(sprite, target, x+blitX, y+blitY, blitClip))
+            return;
+        BufferedImage mip=sprite.getMipmap(scale*Math.min((double) width/sprite.getWidth(), (double) height/sprite.getHeight()));
+        if(mip!=null)
+            graphics.drawImage(mip, x, y, width, height, null);
+        else
+            sprite.draw(graphics, x, y, width, height);
+    }
+
+    /**
+     * Returns id of given image, assigns the next id on first use in this frame.
+     * @param image sprite or image.
+     * @return id of the image.
+     */
+    private int imageId(Object image) {
+        Integer id=mImageIds.get(image);
+        if(id==null) {
+            id=mImages.size();
+            mImages.add(image);
+            mImageIds.put(image, id);
+        }
+        return id;
+    }
+
+    /**
+     * Appends a command.
+     * @param image image id or {@link #LIVE}.
+     * @param x x of bounds.
+     * @param y y of bounds.
+     * @param width width of bounds, negative to ignore bounds.
+     * @param height height of bounds.
+     * @param layer layer to draw in.
+     * @param drawer drawer of a live command, null otherwise.
+     */
+    private void record(int image, int x, int y, int width, int height, RenderLayer layer, Renderable.Drawer drawer) {
+        if(mSize==mDrawers.length) {
+            mCommands=Arrays.copyOf(mCommands, mSize*2*STRIDE);
+            mDrawers=Arrays.copyOf(mDrawers, mSize*2);
+        }
+        int offset=mSize*STRIDE;
+        mCommands[offset]=image;
+        mCommands[offset+1]=x;
+        mCommands[offset+2]=y;
+        mCommands[offset+3]=width;
+        mCommands[offset+4]=height;
+        mCommands[offset+5]=layer.ordinal();
+        mDrawers[mSize++]=drawer;
+    }
+}
@@ -0,0 +1,1106 @@
+package com.engine.view;
+
+import com.engine.behavior.RenderLayer;
+import com.engine.behavior.Renderable;
+import com.engine.data.SpatialGrid;
+import com.engine.sprite.CompatibleImages;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Drawing logic shared by game screens.
+ * Holds all {@link Renderable.Drawer}s of a screen and feeds them with the graphics of a frame,
+ * no matter if the screen is painted by Swing or rendered actively.
+ * <p>Drawers added or removed are queued and applied on {@link #sync(int, int)}, the sync point of the screen.
+ * Each sync point records the frame into a {@link RenderCommandBuffer} and publishes it in an immutable snapshot,
+ * so {@link #render(Graphics2D, int, int)} can run on another thread, e.g. the event dispatch thread,
+ * and replay the frame while the game thread changes drawers and records the next one.
+ * Three command buffers are handed around: a buffer stays owned by the snapshot being replayed until rendering releases it,
+ * so the game thread always records into one that is neither published nor being replayed.</p>
+ * <p>Drawers are drawn by {@link RenderLayer}, each renderable declares its layer.
+ * Each layer is an array-backed bucket, drawers keep their slot as a handle so they are removed in constant time,
+ * inside a layer drawers are drawn in the order they were added.
+ * Layer drawers, drawers that do not belong to an entity, are drawn before the entity drawers of their layer.</p>
+ * <p>Entity drawers are indexed in a {@link SpatialGrid} by the bounds of their renderables,
+ * each frame only drawers of renderables intersecting the viewport are visited.
+ * Renderables report their movement as {@link Renderable.Tracker}s, renderables that cannot be tracked are always drawn.</p>
+ * <p>Optionally the pipeline tracks which areas of the screen changed, see {@link #setDirtyTracking(boolean)}.</p>
+ * <p>Drawers of world layers are drawn through the transform of a {@link Camera}, taken at the sync point,
+ * and culled by the area of the world the camera shows, see {@link #setCamera(Camera)}.</p>
+ * <p>Whether anything changed since the last frame is tracked for on-demand rendering, see {@link #takeChanges()}.</p>
+ * <p>Frames can be rendered at a lower internal resolution and upscaled once, see {@link #setRenderScale(double)}.</p>
+ * @see AbstractGameScreen
+ * @see AbstractActiveGameScreen
+ */
+public final class RenderPipeline implements Renderable.Tracker {
+    /**
+     * Width and height of a cell of {@link #mGrid}.
+     */
+    private static final int CELL_SIZE=256;
+
+    /**
+     * Part of the screen above which a dirty area is repainted as a full frame.
+     * @see #takeDirtyArea(int, int)
+     */
+    private static final double FULL_REPAINT_THRESHOLD=0.5;
+
+    /**
+     * Orders entries as they are drawn, by layer and by slot in the bucket of the layer.
+     */
+    private static final Comparator<Entry> ORDER=Comparator.<Entry>comparingInt(entry -> entry.mLayer.ordinal())
+            .thenComparingInt(entry -> entry.mIndex);
+
+    /**
+     * Bucket of each {@link RenderLayer}, by ordinal.
+     * Guards all state of the game thread side, rendering only reads {@link #mSnapshot}.
+     */
+    private final Bucket[] mBuckets=new Bucket[RenderLayer.values().length];
+
+    /**
+     * Entries of all drawers in {@link #mBuckets}.
+     */
+    private final Map<Renderable.Drawer, Entry> mEntries=new IdentityHashMap<>();
+
+    /**
+     * Entries by renderable, used when renderables report changes.
+     */
+    private final Map<Renderable, Entry> mRenderables=new IdentityHashMap<>();
+
+    /**
+     * Entries of tracked renderables by their bounds.
+     */
+    private final SpatialGrid<Entry> mGrid=new SpatialGrid<>(CELL_SIZE);
+
+    /**
+     * Entries of renderables that do not report their bounds, drawn every frame.
+     */
+    private final List<Entry> mUntracked=new ArrayList<>();
+
+    /**
+     * Entries visible at the sync point, reused every sync point.
+     */
+    private final ArrayList<Entry> mVisible=new ArrayList<>();
+
+    /**
+     * Collects entries found by the grid into {@link #mVisible}.
+     */
+    private final Consumer<Entry> mCollectVisible=mVisible::add;
+
+    /**
+     * Area of the world shown on screen, updated on each sync point.
+     */
+    private final Rectangle mViewport=new Rectangle();
+
+    /**
+     * Reused as the area of the screen on each sync point.
+     */
+    private final Rectangle mScreen=new Rectangle();
+
+    /**
+     * Camera moving drawers of world layers, null to draw them at screen coordinates.
+     * @see #setCamera(Camera)
+     */
+    private volatile Camera mCamera;
+
+    /**
+     * Snapshot published by the last sync point, read by {@link #render(Graphics2D, int, int)}.
+     */
+    private volatile Snapshot mSnapshot=Snapshot.EMPTY;
+
+    /**
+     * Epoch of the drawers, increased each time drawers are added or removed.
+     */
+    private long mEpoch;
+
+    /**
+     * Command buffers handed between sync points and rendering, each one guards itself.
+     * Guards {@link #mCommandUsers} and the handoff of {@link #mSnapshot} to rendering.
+     */
+    private final RenderCommandBuffer[] mCommandBuffers={new RenderCommandBuffer(), new RenderCommandBuffer(), new RenderCommandBuffer()};
+
+    /**
+     * Number of renders replaying each command buffer, a buffer in use is not recorded again.
+     * @see #acquireSnapshot()
+     */
+    private final int[] mCommandUsers=new int[mCommandBuffers.length];
+
+    /**
+     * Renders frames in parallel strips, null while disabled.
+     * @see #setParallelStrips(int)
+     */
+    private volatile StripRenderer mStripRenderer;
+
+    /**
+     * Reused to pass bounds of live commands.
+     */
+    private final Rectangle mCommandBounds=new Rectangle();
+
+    /**
+     * Entries added since the last sync point.
+     * Guards itself and {@link #mRemovedDrawers}.
+     * @see #sync(int, int)
+     */
+    private final List<Entry> mAddedEntries=new ArrayList<>();
+
+    /**
+     * Drawers removed since the last sync point.
+     * @see #sync(int, int)
+     */
+    private final Set<Renderable.Drawer> mRemovedDrawers=Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Layer drawers added since the last sync point.
+     * Guarded by {@link #mAddedEntries}.
+     * @see #addLayer(RenderLayer, Renderable.Drawer)
+     */
+    private final List<AddedLayer> mAddedLayers=new ArrayList<>();
+
+    /**
+     * Layer drawers removed since the last sync point.
+     * Guarded by {@link #mAddedEntries}.
+     */
+    private final List<Renderable.Drawer> mRemovedLayers=new ArrayList<>();
+
+    /**
+     * Is {@code true} if drawers were added or removed, renderables changed or an area was invalidated
+     * since the last {@link #takeChanges()}, regardless of dirty tracking.
+     */
+    private final AtomicBoolean mChanged=new AtomicBoolean(true);
+
+    /**
+     * Union of areas changed since the last frame, empty while width is negative.
+     * Guards itself, {@link #mDirtyTracking} and {@link #mAllDirty}.
+     * @see #invalidate(Rectangle)
+     */
+    private final Rectangle mDirtyArea=new Rectangle(0, 0, -1, -1);
+
+    /**
+     * Reused to add bounds of an entry to {@link #mDirtyArea}.
+     */
+    private final Rectangle mDirtyPart=new Rectangle();
+
+    /**
+     * Is {@code true} while changed areas are tracked.
+     * @see #setDirtyTracking(boolean)
+     */
+    private boolean mDirtyTracking;
+
+    /**
+     * Is {@code true} if the whole screen must be repainted on the next frame.
+     */
+    private boolean mAllDirty=true;
+
+    /**
+     * Background image, stretched over the whole frame.
+     */
+    private final Image mBackgroundImage;
+
+    /**
+     * Background image scaled to the size of the frame, scaled again when the frame is resized.
+     * @see #getScaledBackground(int, int)
+     */
+    private volatile BufferedImage mScaledBackground;
+
+    /**
+     * Smallest render scale.
+     */
+    private static final double MIN_RENDER_SCALE=0.25;
+
+    /**
+     * Step the render scale changes by in dynamic mode, the scale is always a multiple of it.
+     */
+    private static final double RENDER_SCALE_STEP=0.05;
+
+    /**
+     * Number of frames averaged before the render scale changes in dynamic mode.
+     */
+    private static final int RENDER_SCALE_FRAMES=30;
+
+    /**
+     * Part of the frame budget under which the render scale grows in dynamic mode.
+     */
+    private static final double RENDER_SCALE_HEADROOM=0.7;
+
+    /**
+     * Size of the internal resolution relative to the frame, 1 renders at the size of the frame.
+     * @see #setRenderScale(double)
+     */
+    private volatile double mRenderScale=1;
+
+    /**
+     * Is {@code true} to upscale with bilinear filtering, {@code false} for nearest neighbour.
+     * @see #setSmoothUpscaling(boolean)
+     */
+    private volatile boolean mSmoothUpscaling;
+
+    /**
+     * Frame budget of dynamic render scale as nanoseconds, 0 while the scale is fixed.
+     * Guards itself, {@link #mMinRenderScale}, {@link #mScaleFrames} and {@link #mScaleNanos} are guarded by this.
+     * @see #setDynamicRenderScale(long, double)
+     */
+    private long mFrameBudget_nanos;
+
+    /**
+     * Smallest scale of dynamic render scale.
+     */
+    private double mMinRenderScale=MIN_RENDER_SCALE;
+
+    /**
+     * Frames rendered since the render scale was last adjusted.
+     */
+    private int mScaleFrames;
+
+    /**
+     * Time of frames rendered since the render scale was last adjusted, as nanoseconds.
+     */
+    private long mScaleNanos;
+
+    /**
+     * Image frames are rendered into at the internal resolution, created again when its size changes.
+     */
+    private BufferedImage mScaleBuffer;
+
+    /**
+     * Background constructor.
+     * @param backgroundImage image drawn behind everything, null for no background image.
+     */
+    public RenderPipeline(Image backgroundImage) {
+        mBackgroundImage=backgroundImage;
+        for (RenderLayer layer : RenderLayer.values()) {
+            mBuckets[layer.ordinal()]=new Bucket();
+        }
+    }
+
+    /**
+     * Adds drawers of given entities.
+     * Drawers are added on the next sync point.
+     * @param entities entities to include in drawing process.
+     * @see #sync(int, int)
+     */
+    public void add(Renderable... entities) {
+        mChanged.set(true);
+        synchronized (mAddedEntries) {
+            for (Renderable entity : entities) {
+                Renderable.Drawer drawer=entity.getDrawer(Renderable.Drawer.class);
+                if(drawer!=null&&!mRemovedDrawers.remove(drawer))
+                    mAddedEntries.add(new Entry(entity, drawer));
+            }
+        }
+    }
+
+    /**
+     * Removes drawer of given entity.
+     * Drawer is removed on the next sync point.
+     * @param entity entity to remove its drawer.
+     * @see #sync(int, int)
+     */
+    public void remove(Renderable entity) {
+        Renderable.Drawer drawer=entity.getDrawer(Renderable.Drawer.class);
+        mChanged.set(true);
+        synchronized (mAddedEntries) {
+            if(!mAddedEntries.removeIf(entry -> entry.mDrawer==drawer))
+                mRemovedDrawers.add(drawer);
+        }
+    }
+
+    /**
+     * Adds a layer drawer, a drawer that does not belong to an entity,
+     * drawn before the entity drawers of given layer.
+     * Layer drawers of a layer are drawn in the order they were added.
+     * Drawer is added on the next sync point.
+     * @param layer layer to draw in.
+     * @param drawer drawer to add.
+     * @see #sync(int, int)
+     */
+    public void addLayer(RenderLayer layer, Renderable.Drawer drawer) {
+        mChanged.set(true);
+        synchronized (mAddedEntries) {
+            if(!mRemovedLayers.remove(drawer))
+                mAddedLayers.add(new AddedLayer(layer, drawer));
+        }
+    }
+
+    /**
+     * Removes given layer drawer.
+     * Drawer is removed on the next sync point.
+     * @param drawer drawer to remove.
+     * @see #sync(int, int)
+     */
+    public void removeLayer(Renderable.Drawer drawer) {
+        mChanged.set(true);
+        synchronized (mAddedEntries) {
+            if(!mAddedLayers.removeIf(added -> added.drawer()==drawer))
+                mRemovedLayers.add(drawer);
+        }
+    }
+
+    /**
+     * Sync point of the pipeline, called by the game thread once per tick.
+     * Applies drawers added and removed since the last call.
+     * Added renderables are tracked by this pipeline and indexed by their bounds.
+     * Then records drawers of renderables intersecting the screen, and all layer drawers,
+     * and publishes the recorded frame, replayed by the next calls to {@link #render(Graphics2D, int, int)}.
+     * @param width width of the screen.
+     * @param height height of the screen.
+     */
+    public void sync(int width, int height) {
+        synchronized (mBuckets) {
+            Snapshot old=mSnapshot;
+            synchronized (mAddedEntries) {
+                if(!mRemovedDrawers.isEmpty()||!mAddedEntries.isEmpty()||!mAddedLayers.isEmpty()||!mRemovedLayers.isEmpty())
+                    mEpoch++;
+                if(!mRemovedDrawers.isEmpty()) {
+                    for (Renderable.Drawer drawer : mRemovedDrawers) {
+                        Entry entry=mEntries.remove(drawer);
+                        if(entry!=null) unlink(entry);
+                    }
+                    mRemovedDrawers.clear();
+                }
+                for (int i = 0; i < mAddedEntries.size(); i++) {
+                    Entry entry=mAddedEntries.get(i);
+                    if(!mEntries.containsKey(entry.mDrawer))
+                        link(entry);
+                }
+                mAddedEntries.clear();
+                if(!mAddedLayers.isEmpty()||!mRemovedLayers.isEmpty())
+                    invalidate(null);
+                for (Bucket bucket : mBuckets) {
+                    bucket.mLayers.removeAll(mRemovedLayers);
+                }
+                for (int i = 0; i < mAddedLayers.size(); i++) {
+                    AddedLayer added=mAddedLayers.get(i);
+                    mBuckets[added.layer().ordinal()].mLayers.add(added.drawer());
+                }
+                mRemovedLayers.clear();
+                mAddedLayers.clear();
+            }
+            Camera camera=mCamera;
+            AffineTransform world=camera==null||camera.isIdentity()?null:camera.getTransform();
+            mScreen.setBounds(0, 0, width, height);
+            mViewport.setBounds(world==null?mScreen:camera.toWorld(mScreen));
+            mGrid.query(mViewport, mCollectVisible);
+            mVisible.addAll(mUntracked);
+            mVisible.sort(ORDER);
+            int buffer=takeBackBuffer(old.mBuffer);
+            RenderCommandBuffer commands=mCommandBuffers[buffer];
+            synchronized (commands) {
+                record(commands);
+            }
+            mSnapshot=new Snapshot(mEpoch, old.mEpoch==mEpoch?old.mDrawers:copyDrawers(), mVisible, buffer, commands, world);
+            mVisible.clear();
+        }
+    }
+
+    /**
+     * Returns a command buffer neither published nor being replayed, waits if all are in use,
+     * which only happens while several threads render at once.
+     * @param published index of the buffer of the published snapshot, -1 for none.
+     * @return index of the buffer to record.
+     */
+    private int takeBackBuffer(int published) {
+        synchronized (mCommandBuffers) {
+            while (true) {
+                for (int i = 0; i < mCommandBuffers.length; i++) {
+                    if(i!=published&&mCommandUsers[i]==0)
+                        return i;
+                }
+                try {
+                    mCommandBuffers.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the published snapshot for rendering, its command buffer is not recorded again until it's released.
+     * @return published snapshot.
+     * @see #releaseSnapshot(Snapshot)
+     */
+    private Snapshot acquireSnapshot() {
+        synchronized (mCommandBuffers) {
+            Snapshot snapshot=mSnapshot;
+            if(snapshot.mBuffer>=0)
+                mCommandUsers[snapshot.mBuffer]++;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Gives the command buffer of a snapshot taken by {@link #acquireSnapshot()} back to sync points.
+     * @param snapshot rendered snapshot.
+     */
+    private void releaseSnapshot(Snapshot snapshot) {
+        if(snapshot.mBuffer<0)
+            return;
+        synchronized (mCommandBuffers) {
+            mCommandUsers[snapshot.mBuffer]--;
+            mCommandBuffers.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the epoch of the drawers in the last published snapshot.
+     * The epoch increases each time a sync point applies added or removed drawers.
+     * @return epoch of the drawers being drawn.
+     */
+    public long getEpoch() {
+        return mSnapshot.mEpoch;
+    }
+
+    /**
+     * Enables or disables tracking of changed screen areas.
+     * While enabled, renderables added, removed, moved or changing sprites,
+     * animated drawers and areas passed to {@link #invalidate(Rectangle)} mark the screen dirty.
+     * @param enabled {@code true} to track changed areas, {@code false} to repaint full frames.
+     * @see #takeDirtyArea(int, int)
+     */
+    public void setDirtyTracking(boolean enabled) {
+        synchronized (mDirtyArea) {
+            mDirtyTracking=enabled;
+            mAllDirty=true;
+            mDirtyArea.setBounds(0, 0, -1, -1);
+        }
+    }
+
+    /**
+     * Returns if changed screen areas are tracked.
+     * @return {@code true} if tracking is enabled, {@code false} otherwise.
+     */
+    public boolean isDirtyTracking() {
+        synchronized (mDirtyArea) {
+            return mDirtyTracking;
+        }
+    }
+
+    /**
+     * Marks given area of the screen to be repainted on the next frame.
+     * Does nothing while tracking is disabled.
+     * @param area changed area, null for the whole screen.
+     */
+    public void invalidate(Rectangle area) {
+        mChanged.set(true);
+        synchronized (mDirtyArea) {
+            if(!mDirtyTracking)
+                return;
+            if(area==null)
+                mAllDirty=true;
+            else if(!mAllDirty&&area.width>0&&area.height>0)
+                mDirtyArea.add(area);
+        }
+    }
+
+    /**
+     * Marks last known bounds of given entry dirty.
+     * @param entry changed entry.
+     */
+    private void invalidateEntry(Entry entry) {
+        mChanged.set(true);
+        synchronized (mDirtyArea) {
+            if(!mDirtyTracking||mAllDirty||entry.mWidth<=0||entry.mHeight<=0)
+                return;
+            mDirtyPart.setBounds(entry.mX, entry.mY, entry.mWidth, entry.mHeight);
+            mDirtyArea.add(mDirtyPart);
+        }
+    }
+
+    /**
+     * Returns if the next frame may look different from the last one and starts collecting changes for the next one.
+     * A frame changes if drawers were added or removed, renderables moved or changed sprites or an area was invalidated,
+     * or if any visible drawer or layer drawer is animated, or any renderable is not tracked.
+     * @return {@code true} if the frame should be rendered, {@code false} if it would be the same as the last one.
+     */
+    public boolean takeChanges() {
+        if(mChanged.getAndSet(false))
+            return true;
+        synchronized (mBuckets) {
+            if(!mUntracked.isEmpty())
+                return true;
+            for (Bucket bucket : mBuckets) {
+                for (int i = 0; i < bucket.mLayers.size(); i++) {
+                    if(bucket.mLayers.get(i).isAnimated())
+                        return true;
+                }
+            }
+            for (Entry entry : mSnapshot.mVisible) {
+                if(entry.mDrawer.isAnimated())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the area of the screen to repaint in this frame and starts collecting changes for the next one.
+     * Drawers that are animated and renderables that are not tracked are marked dirty here.
+     * @param width width of the screen.
+     * @param height height of the screen.
+     * @return area to repaint, null if nothing changed, whole screen if tracking is disabled
+     *         or the area covers more than half of the screen.
+     */
+    public Rectangle takeDirtyArea(int width, int height) {
+        if(isDirtyTracking()) {
+            synchronized (mBuckets) {
+                Entry[] visible=mSnapshot.mVisible;
+                for (Entry entry : visible) {
+                    if(entry.mDrawer.isAnimated())
+                        invalidateEntry(entry);
+                }
+                for (int i = 0; i < mUntracked.size(); i++) { // bounds are unknown until now
+                    Entry entry=mUntracked.get(i);
+                    invalidateEntry(entry);
+                    entry.setBounds(entry.mRenderable);
+                    invalidateEntry(entry);
+                }
+            }
+        }
+        synchronized (mDirtyArea) {
+            Rectangle screen=new Rectangle(0, 0, width, height);
+            Rectangle area;
+            if(!mDirtyTracking||mAllDirty) {
+                area=screen;
+            } else if(mDirtyArea.width<0) {
+                area=null;
+            } else {
+                Rectangle dirty=mDirtyArea;
+                AffineTransform world=mSnapshot.mWorld;
+                if(world!=null) // areas of world layers and of the screen are mixed, repaint both
+                    dirty=dirty.union(world.createTransformedShape(dirty).getBounds());
+                area=dirty.intersection(screen);
+                if(area.isEmpty())
+                    area=null;
+                else if((double) area.width*area.height>FULL_REPAINT_THRESHOLD*width*height)
+                    area=screen;
+            }
+            mAllDirty=false;
+            mDirtyArea.setBounds(0, 0, -1, -1);
+            return area;
+        }
+    }
+
+    /**
+     * Configures given graphics, draws background
+     * and replays the commands of the last sync point intersecting the clip of the graphics.
+     * Top layer of the screen is drawn by the caller after this.
+     * Can be called from any thread, holds the command buffer it replays until done.
+     * @param graphics graphics of the frame.
+     * @param width width of the frame.
+     * @param height height of the frame.
+     */
+    public void render(Graphics2D graphics, int width, int height) {
+        render(graphics, width, height, null);
+    }
+
+    /**
+     * Renders a frame like {@link #render(Graphics2D, int, int)} into a known image.
+     * Recorded opaque sprites drawn at their own size are copied straight into the pixels of the image
+     * by {@link com.engine.sprite.RasterBlitter} instead of being drawn through the graphics,
+     * which only pays off for software images, e.g. offscreen frames.
+     * Parallel strips always copy sprites into their own framebuffer.
+     * @param graphics graphics of the frame.
+     * @param width width of the frame.
+     * @param height height of the frame.
+     * @param target image the graphics draws into, null if unknown.
+     */
+    public void render(Graphics2D graphics, int width, int height, BufferedImage target) {
+        long start=System.nanoTime();
+        double scale=mRenderScale;
+        Snapshot snapshot=acquireSnapshot();
+        try {
+            if(scale<1&&width>0&&height>0)
+                renderScaled(graphics, width, height, scale, snapshot);
+            else
+                renderFrame(graphics, width, height, snapshot, target);
+        } finally {
+            releaseSnapshot(snapshot);
+        }
+        adjustRenderScale(System.nanoTime()-start);
+    }
+
+    /**
+     * Renders a frame at the size of the frame.
+     * @param graphics graphics of the frame.
+     * @param width width of the frame.
+     * @param height height of the frame.
+     * @param snapshot snapshot to replay.
+     * @param target image the graphics draws into, null if unknown.
+     */
+    private void renderFrame(Graphics2D graphics, int width, int height, Snapshot snapshot, BufferedImage target) {
+        configure(graphics);
+        BufferedImage background=getScaledBackground(width, height);
+        RenderCommandBuffer commands=snapshot.mCommands;
+        StripRenderer strips=mStripRenderer;
+        if(strips!=null&&commands!=null) {
+            synchronized (commands) {
+                commands.sort();
+                strips.render(graphics, width, height, width, height, background, commands, snapshot.mWorld, this);
+            }
+            return;
+        }
+        if(background!=null)
+            graphics.drawImage(background, 0, 0, null);
+        if(commands==null)
+            return;
+        synchronized (commands) {
+            commands.sort();
+            commands.draw(graphics, null, target, snapshot.mWorld);
+        }
+    }
+
+    /**
+     * Renders a frame at the internal resolution and upscales it to the frame.
+     * Background is scaled to the internal resolution, drawers draw in frame coordinates through a scaling transform.
+     * @param graphics graphics of the frame.
+     * @param width width of the frame.
+     * @param height height of the frame.
+     * @param scale render scale, less than 1.
+     * @param snapshot snapshot to replay.
+     */
+    private void renderScaled(Graphics2D graphics, int width, int height, double scale, Snapshot snapshot) {
+        int scaledWidth=Math.max(1, (int) Math.ceil(width*scale)), scaledHeight=Math.max(1, (int) Math.ceil(height*scale));
+        BufferedImage background=getScaledBackground(scaledWidth, scaledHeight);
+        RenderCommandBuffer commands=snapshot.mCommands;
+        StripRenderer strips=mStripRenderer;
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, mSmoothUpscaling
+                ?RenderingHints.VALUE_INTERPOLATION_BILINEAR:RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        if(strips!=null&&commands!=null) {
+            synchronized (commands) {
+                commands.sort();
+                strips.render(graphics, width, height, scaledWidth, scaledHeight, background, commands, snapshot.mWorld, this);
+            }
+            return;
+        }
+        BufferedImage buffer=getScaleBuffer(scaledWidth, scaledHeight);
+        Graphics2D scaled=buffer.createGraphics();
+        try {
+            scaled.setComposite(AlphaComposite.Clear);
+            scaled.fillRect(0, 0, scaledWidth, scaledHeight);
+            scaled.setComposite(AlphaComposite.SrcOver);
+            if(background!=null)
+                scaled.drawImage(background, 0, 0, null);
+            scaled.scale((double) scaledWidth/width, (double) scaledHeight/height);
+            Rectangle clip=graphics.getClipBounds();
+            if(clip!=null)
+                scaled.clip(clip);
+            configure(scaled);
+            if(commands!=null) {
+                synchronized (commands) {
+                    commands.sort();
+                    commands.draw(scaled, null, null, snapshot.mWorld);
+                }
+            }
+        } finally {
+            scaled.dispose();
+        }
+        graphics.drawImage(buffer, 0, 0, width, height, null);
+    }
+
+    /**
+     * Returns the image frames are rendered into at the internal resolution.
+     * Only used by the thread rendering frames.
+     * @param width width of the internal resolution.
+     * @param height height of the internal resolution.
+     * @return compatible translucent image of given size.
+     */
+    private BufferedImage getScaleBuffer(int width, int height) {
+        BufferedImage buffer=mScaleBuffer;
+        if(buffer==null||buffer.getWidth()!=width||buffer.getHeight()!=height) {
+            buffer=CompatibleImages.create(width, height);
+            mScaleBuffer=buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Sets a fixed internal resolution, relative to the size of the frame.
+     * Everything but the top layer of the screen is rendered into a smaller image which is upscaled to the frame once,
+     * so fewer pixels are drawn. Disables dynamic render scale.
+     * @param scale render scale, e.g. 0.5 or 0.75, 1 to render at the size of the frame.
+     * @throws IllegalArgumentException if scale is not between {@value #MIN_RENDER_SCALE} and 1.
+     * @see #setSmoothUpscaling(boolean)
+     */
+    public void setRenderScale(double scale) throws IllegalArgumentException {
+        if(!(scale>=MIN_RENDER_SCALE&&scale<=1))
+            throw new IllegalArgumentException("Render scale must be between "+MIN_RENDER_SCALE+" and 1: "+scale);
+        synchronized (this) {
+            mFrameBudget_nanos=0;
+        }
+        mRenderScale=scale;
+    }
+
+    /**
+     * Returns the current render scale, changes every now and then in dynamic mode.
+     * @return render scale, 1 if frames are rendered at the size of the frame.
+     */
+    public double getRenderScale() {
+        return mRenderScale;
+    }
+
+    /**
+     * Sets filtering of the upscaled frame.
+     * @param smooth {@code true} for bilinear filtering, {@code false} for nearest neighbour, which keeps pixel art sharp.
+     */
+    public void setSmoothUpscaling(boolean smooth) {
+        mSmoothUpscaling=smooth;
+    }
+
+    /**
+     * Enables dynamic render scale, the scale is adjusted to keep rendering a frame within given budget.
+     * Time of rendering is averaged over {@value #RENDER_SCALE_FRAMES} frames, the scale shrinks by
+     * {@value #RENDER_SCALE_STEP} while it's over budget and grows back while it's under
+     * {@value #RENDER_SCALE_HEADROOM} of the budget. Starts at full resolution.
+     * @param frameBudgetNanos time rendering a frame may take as nanoseconds, 0 or less to go back to full resolution.
+     * @param minScale smallest render scale.
+     * @throws IllegalArgumentException if minimum scale is not between {@value #MIN_RENDER_SCALE} and 1.
+     */
+    public synchronized void setDynamicRenderScale(long frameBudgetNanos, double minScale) throws IllegalArgumentException {
+        if(!(minScale>=MIN_RENDER_SCALE&&minScale<=1))
+            throw new IllegalArgumentException("Render scale must be between "+MIN_RENDER_SCALE+" and 1: "+minScale);
+        mFrameBudget_nanos=Math.max(0, frameBudgetNanos);
+        mMinRenderScale=minScale;
+        mScaleFrames=0;
+        mScaleNanos=0;
+        mRenderScale=1;
+    }
+
+    /**
+     * Adds time of a rendered frame and adjusts the render scale in dynamic mode.
+     * @param nanos time of rendering the frame.
+     */
+    private synchronized void adjustRenderScale(long nanos) {
+        if(mFrameBudget_nanos<=0)
+            return;
+        mScaleNanos+=nanos;
+        if(++mScaleFrames<RENDER_SCALE_FRAMES)
+            return;
+        long average=mScaleNanos/mScaleFrames;
+        mScaleFrames=0;
+        mScaleNanos=0;
+        double scale=mRenderScale;
+        if(average>mFrameBudget_nanos)
+            scale=Math.max(mMinRenderScale, scale-RENDER_SCALE_STEP);
+        else if(average<mFrameBudget_nanos*RENDER_SCALE_HEADROOM)
+            scale=Math.min(1, scale+RENDER_SCALE_STEP);
+        scale=Math.round(scale/RENDER_SCALE_STEP)*RENDER_SCALE_STEP; // keep the buffer sizes few
+        if(scale!=mRenderScale)
+            mRenderScale=Math.max(mMinRenderScale, Math.min(1, scale));
+    }
+
+    /**
+     * Sets the camera drawers of world layers are drawn through, applied from the next sync point.
+     * @param camera camera, null to draw world layers at screen coordinates.
+     * @see RenderLayer#isWorldSpace()
+     */
+    public void setCamera(Camera camera) {
+        mCamera=camera;
+        invalidate(null);
+    }
+
+    /**
+     * Returns the camera drawers of world layers are drawn through.
+     * @return camera, null if world layers are drawn at screen coordinates.
+     */
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    /**
+     * Sets rendering hints of a frame on given graphics, by the current quality tier.
+     * @param graphics graphics to configure.
+     * @see QualityGovernor
+     */
+    void configure(Graphics2D graphics) {
+        QualityGovernor.getShared().getTier().configure(graphics);
+    }
+
+    /**
+     * Enables or disables parallel rendering.
+     * While enabled, frames are split in horizontal strips rendered concurrently into a software framebuffer,
+     * which is then drawn at once. Useful where Java2D draws with software loops and several cores are available.
+     * Only recorded commands are drawn concurrently, drawers of live commands are called one at a time,
+     * and live commands without bounds, e.g. layer drawers that record nothing, are called once per strip.
+     * Entity drawers are recorded unless they draw custom shapes, see {@link com.engine.entity.AbstractEntity.AbstractDrawer}.
+     * @param strips number of strips, e.g. {@link Runtime#availableProcessors()}, 1 or less to disable.
+     * @see StripRenderer
+     */
+    public synchronized void setParallelStrips(int strips) {
+        StripRenderer old=mStripRenderer;
+        if(old!=null&&old.getStrips()==strips)
+            return;
+        mStripRenderer=strips>1?new StripRenderer(strips):null;
+        if(old!=null)
+            old.shutdown(); // after a frame it may be rendering
+    }
+
+    /**
+     * Returns number of strips rendered in parallel.
+     * @return number of strips, 1 if parallel rendering is disabled.
+     */
+    public int getParallelStrips() {
+        StripRenderer strips=mStripRenderer;
+        return strips==null?1:strips.getStrips();
+    }
+
+    /**
+     * Returns the background image scaled to given size, scales it on the first frame and when the frame is resized.
+     * @param width width of the frame.
+     * @param height height of the frame.
+     * @return compatible image of given size, null if there is no background image or it is not loaded yet.
+     */
+    private BufferedImage getScaledBackground(int width, int height) {
+        if(mBackgroundImage==null||width<=0||height<=0||mBackgroundImage.getWidth(null)<=0)
+            return null;
+        BufferedImage scaled=mScaledBackground;
+        if(scaled==null||scaled.getWidth()!=width||scaled.getHeight()!=height) {
+            scaled=CompatibleImages.scale(mBackgroundImage, width, height);
+            mScaledBackground=scaled;
+        }
+        return scaled;
+    }
+
+    /**
+     * Records layer drawers and drawers of visible entries, in the order they are drawn.
+     * Drawers that cannot be recorded are recorded as live commands, with the bounds of their renderable when known,
+     * so strips only call the drawers intersecting them.
+     * @param commands buffer to record to.
+     */
+    private void record(RenderCommandBuffer commands) {
+        commands.clear();
+        RenderLayer[] layers=RenderLayer.values();
+        int next=0;
+        for (int layer = 0; layer < mBuckets.length; layer++) {
+            List<Renderable.Drawer> drawers=mBuckets[layer].mLayers;
+            for (int i = 0; i < drawers.size(); i++) {
+                Renderable.Drawer drawer=drawers.get(i);
+                if(!drawer.record(commands, layers[layer]))
+                    commands.drawLive(drawer, layers[layer], null);
+            }
+            for (; next < mVisible.size() && mVisible.get(next).mLayer.ordinal() == layer; next++) {
+                Entry entry=mVisible.get(next);
+                if(entry.mDrawer.record(commands, entry.mLayer))
+                    continue;
+                if(entry.mTracked) {
+                    mCommandBounds.setBounds(entry.mX, entry.mY, entry.mWidth, entry.mHeight);
+                    commands.drawLive(entry.mDrawer, entry.mLayer, mCommandBounds);
+                } else {
+                    commands.drawLive(entry.mDrawer, entry.mLayer, null); // bounds are only known to the game thread
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies entity drawers of all buckets, in the order they are drawn.
+     * @return unmodifiable copy.
+     */
+    private List<Renderable.Drawer> copyDrawers() {
+        List<Renderable.Drawer> drawers=new ArrayList<>(mEntries.size());
+        for (Bucket bucket : mBuckets) {
+            for (int i = 0; i < bucket.mSize; i++) {
+                Entry entry=bucket.mEntries[i];
+                if(entry!=null) drawers.add(entry.mDrawer);
+            }
+        }
+        return Collections.unmodifiableList(drawers);
+    }
+
+    /**
+     * Moves renderable in the index, if its bounds changed.
+     * @param renderable changed renderable.
+     */
+    @Override
+    public void boundsChanged(Renderable renderable) {
+        synchronized (mBuckets) {
+            Entry entry=mRenderables.get(renderable);
+            if(entry!=null&&!entry.hasBounds(renderable)) {
+                invalidateEntry(entry);
+                entry.setBounds(renderable);
+                invalidateEntry(entry);
+                mGrid.put(entry, entry.mX, entry.mY, entry.mWidth, entry.mHeight);
+            }
+        }
+    }
+
+    /**
+     * Marks area of renderable dirty.
+     * @param renderable changed renderable.
+     */
+    @Override
+    public void spriteChanged(Renderable renderable) {
+        synchronized (mBuckets) {
+            Entry entry=mRenderables.get(renderable);
+            if(entry!=null)
+                invalidateEntry(entry);
+        }
+    }
+
+    /**
+     * Renderables remove their drawers themselves when they stop rendering, nothing to do.
+     * @param renderable removed renderable.
+     */
+    @Override
+    public void removed(Renderable renderable) {
+    }
+
+    /**
+     * Starts drawing and tracking given entry.
+     * @param entry entry to add.
+     */
+    private void link(Entry entry) {
+        Renderable renderable=entry.mRenderable;
+        mBuckets[entry.mLayer.ordinal()].add(entry);
+        mEntries.put(entry.mDrawer, entry);
+        mRenderables.put(renderable, entry);
+        renderable.setTracker(this);
+        entry.setBounds(renderable);
+        invalidateEntry(entry);
+        entry.mTracked=renderable.getTracker()==this;
+        if(entry.mTracked)
+            mGrid.put(entry, entry.mX, entry.mY, entry.mWidth, entry.mHeight);
+        else
+            mUntracked.add(entry);
+    }
+
+    /**
+     * Stops drawing and tracking given entry.
+     * @param entry entry to remove.
+     */
+    private void unlink(Entry entry) {
+        Renderable renderable=entry.mRenderable;
+        mBuckets[entry.mLayer.ordinal()].remove(entry);
+        mRenderables.remove(renderable);
+        invalidateEntry(entry);
+        if(!mGrid.remove(entry))
+            mUntracked.remove(entry);
+        if(renderable.getTracker()==this)
+            renderable.setTracker(null);
+    }
+
+    /**
+     * Returns all entity drawers applied at the last sync point, in the order they are drawn.
+     * @return unmodifiable drawers of the last published snapshot as List<> impl.
+     */
+    public List<Renderable.Drawer> getDrawers() {
+        return mSnapshot.mDrawers;
+    }
+
+    /**
+     * Immutable state published by a sync point.
+     * Drawers are shared by snapshots of the same epoch, visible entries are copied each sync point.
+     * The command buffer is owned by the snapshot while it's published or being replayed.
+     */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY=new Snapshot(-1, List.of(), List.of(), -1, null, null);
+
+        private final long mEpoch;
+        private final List<Renderable.Drawer> mDrawers;
+        private final Entry[] mVisible;
+        private final int mBuffer;
+        private final RenderCommandBuffer mCommands;
+        private final AffineTransform mWorld;
+
+        private Snapshot(long epoch, List<Renderable.Drawer> drawers, List<Entry> visible, int buffer,
+                         RenderCommandBuffer commands, AffineTransform world) {
+            mEpoch=epoch;
+            mDrawers=drawers;
+            mVisible=visible.toArray(new Entry[0]);
+            mBuffer=buffer;
+            mCommands=commands;
+            mWorld=world;
+        }
+    }
+
+    /**
+     * Layer drawer waiting for the next sync point.
+     * @param layer layer to draw in.
+     * @param drawer added drawer.
+     */
+    private record AddedLayer(RenderLayer layer, Renderable.Drawer drawer) {
+    }
+
+    /**
+     * Entries and layer drawers of a {@link RenderLayer}.
+     * Entries are kept in an array in the order they were added, a removed entry leaves an empty slot
+     * and the array is compacted once more than half of the slots are empty.
+     */
+    private static final class Bucket {
+        private final List<Renderable.Drawer> mLayers=new ArrayList<>();
+        private Entry[] mEntries=new Entry[16];
+        private int mSize;
+        private int mEmpty;
+
+        private void add(Entry entry) {
+            if(mSize==mEntries.length)
+                mEntries=Arrays.copyOf(mEntries, mSize*2);
+            entry.mIndex=mSize;
+            mEntries[mSize++]=entry;
+        }
+
+        private void remove(Entry entry) {
+            if(entry.mIndex<0)
+                return;
+            mEntries[entry.mIndex]=null;
+            entry.mIndex=-1;
+            if(++mEmpty>mSize/2)
+                compact();
+        }
+
+        private void compact() {
+            int size=0;
+            for (int i = 0; i < mSize; i++) {
+                Entry entry=mEntries[i];
+                if(entry!=null) {
+                    entry.mIndex=size;
+                    mEntries[size++]=entry;
+                }
+            }
+            Arrays.fill(mEntries, size, mSize, null);
+            mSize=size;
+            mEmpty=0;
+        }
+    }
+
+    /**
+     * Drawer with the renderable it belongs to, its slot in the bucket of its layer and its last known bounds.
+     */
+    private static final class Entry {
+        private final Renderable mRenderable;
+        private final Renderable.Drawer mDrawer;
+        private final RenderLayer mLayer;
+        private int mIndex=-1;
+        private boolean mTracked;
+        private int mX, mY, mWidth, mHeight;
+
+        private Entry(Renderable renderable, Renderable.Drawer drawer) {
+            mRenderable=renderable;
+            mDrawer=drawer;
+            mLayer=renderable.getRenderLayer();
+        }
+
+        private boolean hasBounds(Renderable renderable) {
+            return mX==renderable.getWorldX()&&mY==renderable.getWorldY()
+                    &&mWidth==renderable.getWidth()&&mHeight==renderable.getHeight();
+        }
+
+        private void setBounds(Renderable renderable) {
+            mX=renderable.getWorldX();
+            mY=renderable.getWorldY();
+            mWidth=renderable.getWidth();
+            mHeight=renderable.getHeight();
+        }
+    }
+}
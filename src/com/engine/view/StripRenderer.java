@@ -0,0 +1,174 @@
+package com.engine.view;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a frame in horizontal strips on several threads, into a framebuffer shown once.
+ * <p>The framebuffer is a {@link BufferedImage#TYPE_INT_ARGB} image, backed by a {@link java.awt.image.DataBufferInt},
+ * so strips are drawn by Java2D's software loops in parallel, each thread with its own graphics clipped to its strip.
+ * Recorded commands are drawn concurrently, drawers of live commands are called one at a time
+ * because they may not be thread safe.
+ * Opaque sprites drawn at their own size are copied straight into the pixels of the framebuffer.</p>
+ * @see RenderPipeline#setParallelStrips(int)
+ */
+final class StripRenderer {
+    /**
+     * Number of the last created worker, used to name threads.
+     */
+    private static final AtomicInteger smWorkers=new AtomicInteger();
+
+    /**
+     * Number of strips of a frame.
+     */
+    private final int mStrips;
+
+    /**
+     * Threads drawing all strips but one, the calling thread draws the last one.
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Lock held while calling drawers of live commands.
+     */
+    private final Object mLiveLock=new Object();
+
+    /**
+     * Futures of the current frame, reused every frame.
+     */
+    private final List<Future<?>> mFutures=new ArrayList<>();
+
+    /**
+     * Image strips are drawn into, created again when the frame is resized.
+     */
+    private BufferedImage mFramebuffer;
+
+    /**
+     * Is {@code true} once worker threads are stopped, strips are then all drawn by the calling thread.
+     * @see #shutdown()
+     */
+    private boolean mShutdown;
+
+    /**
+     * Strips constructor.
+     * @param strips number of strips, at least 2.
+     */
+    StripRenderer(int strips) {
+        mStrips=strips;
+        mExecutor=Executors.newFixedThreadPool(strips-1, runnable -> {
+            Thread thread=new Thread(runnable, "StripRenderer-"+smWorkers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns number of strips of a frame.
+     * @return number of strips.
+     */
+    int getStrips() {
+        return mStrips;
+    }
+
+    /**
+     * Draws background and sorted commands into the framebuffer strip by strip, then draws the framebuffer.
+     * The framebuffer has the size of the internal resolution, it's upscaled to the frame if it's smaller.
+     * @param graphics graphics of the frame.
+     * @param width width of the frame.
+     * @param height height of the frame.
+     * @param scaledWidth width of the internal resolution.
+     * @param scaledHeight height of the internal resolution.
+     * @param background background scaled to the internal resolution, null for none.
+     * @param commands sorted commands, locked by the caller.
+     * @param world transform of world layers, null if they draw at screen coordinates.
+     * @param pipeline pipeline configuring the graphics of each strip.
+     */
+    synchronized void render(Graphics2D graphics, int width, int height, int scaledWidth, int scaledHeight,
+                             Image background, RenderCommandBuffer commands, AffineTransform world, RenderPipeline pipeline) {
+        boolean scaled=scaledWidth!=width||scaledHeight!=height;
+        Rectangle area=new Rectangle(0, 0, width, height);
+        Rectangle clip=graphics.getClipBounds();
+        if(clip!=null)
+            Rectangle.intersect(area, clip, area);
+        if(area.isEmpty())
+            return;
+        double scaleX=(double) scaledWidth/width, scaleY=(double) scaledHeight/height;
+        if(scaled) { // to pixels of the framebuffer, rounded outwards
+            int left=(int) Math.floor(area.x*scaleX), top=(int) Math.floor(area.y*scaleY);
+            area.setBounds(left, top, Math.min(scaledWidth, (int) Math.ceil((area.x+area.width)*scaleX))-left,
+                    Math.min(scaledHeight, (int) Math.ceil((area.y+area.height)*scaleY))-top);
+        }
+        if(mFramebuffer==null||mFramebuffer.getWidth()!=scaledWidth||mFramebuffer.getHeight()!=scaledHeight)
+            mFramebuffer=new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+        int stripHeight=(area.height+mStrips-1)/mStrips;
+        mFutures.clear();
+        for (int y = area.y; y < area.y+area.height; y+=stripHeight) {
+            Rectangle strip=new Rectangle(area.x, y, area.width, Math.min(stripHeight, area.y+area.height-y));
+            if(mShutdown||y+stripHeight>=area.y+area.height)
+                drawStrip(strip, scaleX, scaleY, background, commands, world, pipeline); // last strip on this thread
+            else
+                mFutures.add(mExecutor.submit(() -> drawStrip(strip, scaleX, scaleY, background, commands, world, pipeline)));
+        }
+        try {
+            for (int i = 0; i < mFutures.size(); i++) {
+                mFutures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        if(scaled)
+            graphics.drawImage(mFramebuffer, 0, 0, width, height, null);
+        else
+            graphics.drawImage(mFramebuffer, area.x, area.y, area.x+area.width, area.y+area.height,
+                    area.x, area.y, area.x+area.width, area.y+area.height, null);
+    }
+
+    /**
+     * Stops worker threads, waits for a frame being rendered to finish first.
+     * A render started later, by a thread that took this renderer before it was replaced, draws all strips itself.
+     */
+    synchronized void shutdown() {
+        mShutdown=true;
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Clears given strip of the framebuffer and draws background and commands into it.
+     * @param strip area of the strip in the framebuffer.
+     * @param scaleX horizontal scale from the frame to the framebuffer.
+     * @param scaleY vertical scale from the frame to the framebuffer.
+     * @param background background scaled to the framebuffer, null for none.
+     * @param commands sorted commands.
+     * @param world transform of world layers, null if they draw at screen coordinates.
+     * @param pipeline pipeline configuring the graphics.
+     */
+    private void drawStrip(Rectangle strip, double scaleX, double scaleY, Image background,
+                           RenderCommandBuffer commands, AffineTransform world, RenderPipeline pipeline) {
+        Graphics2D graphics=mFramebuffer.createGraphics();
+        try {
+            graphics.setClip(strip);
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fill(strip);
+            graphics.setComposite(AlphaComposite.SrcOver);
+            if(background!=null)
+                graphics.drawImage(background, 0, 0, null);
+            if(scaleX!=1||scaleY!=1)
+                graphics.scale(scaleX, scaleY);
+            pipeline.configure(graphics);
+            commands.draw(graphics, mLiveLock, mFramebuffer, world);
+        } finally {
+            graphics.dispose();
+        }
+    }
+}
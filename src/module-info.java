@@ -2,6 +2,8 @@ module AbstractGameEngineV1 {
 	requires java.desktop;
 	requires jdk.unsupported.desktop;
 	requires java.naming;
+	requires java.management;
+	requires jdk.management;
 
 	exports com.engine;
 	exports com.engine.view;
@@ -12,4 +14,5 @@ module AbstractGameEngineV1 {
 	exports com.engine.animation;
 	exports com.engine.behavior;
 	exports com.engine.sound;
+	exports com.engine.sprite;
 }
\ No newline at end of file